@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikeListener;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.mappers.FilmHydrator;
+import ru.yandex.practicum.filmorate.dao.mappers.GenreRowMapper;
+import ru.yandex.practicum.filmorate.dao.mappers.RatingRowMapper;
+import ru.yandex.practicum.filmorate.dao.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.dao.reference.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.dao.repositories.FilmDbStorage;
+import ru.yandex.practicum.filmorate.dao.repositories.UserDbStorage;
+import ru.yandex.practicum.filmorate.service.FriendRecommendationService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.Optional;
+
+/**
+ * Встроенная база H2 с каталогом из filmsCount фильмов, общая для всех итераций бенчмарка.
+ * Пользователей в десять раз меньше, чем фильмов; у каждого до 20 лайков и до 10 друзей.
+ * Размер каталога задается параметром: mvn -Pjmh test-compile exec:exec -Djmh.films=1000,100000,1000000
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    private static final int LIKES_PER_USER = 20;
+    private static final int FRIENDS_PER_USER = 10;
+
+    @Param({"1000"})
+    public int filmsCount;
+
+    public int usersCount;
+
+    public JdbcTemplate jdbc;
+
+    public FilmDbStorage filmStorage;
+
+    public FilmDbStorage filmStorageWithoutIndex;
+
+    public UserService userService;
+
+    public FilmHydrator hydrator;
+
+    private FriendRecommendationService recommendationService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        usersCount = Math.max(filmsCount / 10, 100);
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:benchmark" + filmsCount + ";DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+        jdbc = new JdbcTemplate(dataSource);
+        seed();
+
+        hydrator = new FilmHydrator(new ReferenceDataRegistry(jdbc, new GenreRowMapper(), new RatingRowMapper()));
+        FilmPopularityIndex popularityIndex = new FilmPopularityIndex(jdbc);
+        popularityIndex.rebuild();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        filmStorage = new FilmDbStorage(jdbc, hydrator, Optional.of(popularityIndex),
+                beanFactory.getBeanProvider(FilmLikeListener.class), 500);
+        filmStorageWithoutIndex = new FilmDbStorage(jdbc, hydrator, Optional.empty(),
+                beanFactory.getBeanProvider(FilmLikeListener.class), 500);
+
+        UserDbStorage userStorage = new UserDbStorage(jdbc, new UserRowMapper());
+        recommendationService = new FriendRecommendationService(userStorage, 1000, 8192, 1, 1000, 300);
+        userService = new UserService(userStorage, Optional.empty(), recommendationService);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        recommendationService.stop();
+        jdbc.execute("SHUTDOWN");
+    }
+
+    private void seed() {
+        jdbc.update("""
+                INSERT INTO films (name, description, release_date, duration, mpa_rating_id)
+                SELECT 'Film ' || X, 'Description of film ' || X, DATEADD('DAY', MOD(X, 27000), DATE '1950-01-01'),
+                       60 + MOD(X, 120), 1 + MOD(X, 5)
+                FROM SYSTEM_RANGE(1, ?);
+                """, filmsCount);
+        jdbc.update("""
+                INSERT INTO film_genre (film_id, genre_id)
+                SELECT X, 1 + MOD(X, 6) FROM SYSTEM_RANGE(1, ?)
+                UNION ALL
+                SELECT X, 1 + MOD(X + 1, 6) FROM SYSTEM_RANGE(1, ?) WHERE MOD(X, 3) = 0;
+                """, filmsCount, filmsCount);
+        jdbc.update("""
+                INSERT INTO users (name, email, login, birthday)
+                SELECT 'User ' || X, 'user' || X || '@mail.com', 'user' || X,
+                       DATEADD('DAY', MOD(X, 15000), DATE '1960-01-01')
+                FROM SYSTEM_RANGE(1, ?);
+                """, usersCount);
+        jdbc.update("""
+                INSERT INTO film_like (user_id, film_id)
+                SELECT DISTINCT u.X, 1 + MOD(u.X * 31 + l.X * l.X * 17, ?)
+                FROM SYSTEM_RANGE(1, ?) AS u, SYSTEM_RANGE(1, ?) AS l;
+                """, filmsCount, usersCount, LIKES_PER_USER);
+        jdbc.update("""
+                UPDATE films AS f
+                SET like_count = (SELECT COUNT(*) FROM film_like AS fl WHERE fl.film_id = f.id);
+                """);
+        jdbc.update("""
+                INSERT INTO user_friend (user_id, friend_id)
+                SELECT DISTINCT u.X, 1 + MOD(u.X + k.X * k.X, ?)
+                FROM SYSTEM_RANGE(1, ?) AS u, SYSTEM_RANGE(1, ?) AS k
+                WHERE 1 + MOD(u.X + k.X * k.X, ?) <> u.X;
+                """, usersCount, usersCount, FRIENDS_PER_USER, usersCount);
+        jdbc.execute("ANALYZE");
+    }
+}
@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SequencedSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение всего каталога: прежняя двухпроходная сборка (RowMapper фильмов, Map жанров и повторное
+ * создание Film) против однопроходного FilmHydrator. Выделение памяти на операцию сравнивается
+ * по gc.alloc.rate.norm профилировщика gc: mvn -Pjmh test-compile exec:exec -Djmh.include=HydrationBenchmarks
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HydrationBenchmarks {
+
+    private static final String FIND_ALL_FILMS_WITH_GENRES_QUERY = """
+            SELECT f.id, f.name, f.description, f.release_date, f.duration, f.mpa_rating_id, fg.genre_id
+            FROM films AS f
+            LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
+            ORDER BY f.id, fg.genre_id;
+            """;
+
+    private static final String FIND_ALL_FILMS_WITH_MPA_RATING_QUERY = """
+            SELECT f.*, mr.name AS mpa_rating_name
+            FROM films AS f
+            LEFT OUTER JOIN mpa_rating AS mr
+            ON f.mpa_rating_id = mr.mpa_rating_id;
+            """;
+
+    private static final String FIND_ALL_FILMS_IDS_WITH_GENRES_QUERY = """
+            SELECT fg.film_id, fg.genre_id, g.name AS genre_name
+            FROM film_genre AS fg
+            LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id;
+            """;
+
+    private static final RowMapper<Film> LEGACY_FILM_MAPPER = (rs, rowNum) -> {
+        Integer ratingId = rs.getInt("mpa_rating_id");
+        if (ratingId == 0) {
+            ratingId = null;
+        }
+        return new Film(
+                rs.getLong("id"),
+                rs.getString("name"),
+                rs.getString("description"),
+                rs.getDate("release_date").toLocalDate(),
+                rs.getInt("duration"),
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>()),
+                new Rating(ratingId, rs.getString("mpa_rating_name"))
+        );
+    };
+
+    private static final ResultSetExtractor<Map<Long, SequencedSet<Genre>>> LEGACY_GENRES_EXTRACTOR = rs -> {
+        Map<Long, SequencedSet<Genre>> data = new HashMap<>();
+        while (rs.next()) {
+            Long filmId = rs.getLong("film_id");
+            data.putIfAbsent(filmId, new LinkedHashSet<>());
+            int genreId = rs.getInt("genre_id");
+            if (genreId != 0) {
+                data.get(filmId).add(new Genre(genreId, rs.getString("genre_name")));
+            }
+        }
+        return data;
+    };
+
+    @Benchmark
+    public List<Film> legacyTwoPass(BenchmarkDatabase db) {
+        List<Film> tmpFilms = db.jdbc.query(FIND_ALL_FILMS_WITH_MPA_RATING_QUERY, LEGACY_FILM_MAPPER);
+        Map<Long, SequencedSet<Genre>> filmsGenres =
+                db.jdbc.query(FIND_ALL_FILMS_IDS_WITH_GENRES_QUERY, LEGACY_GENRES_EXTRACTOR);
+
+        List<Film> films = new ArrayList<>();
+        for (Film tmpFilm : tmpFilms) {
+            if (filmsGenres.containsKey(tmpFilm.getId())) {
+                films.add(new Film(
+                        tmpFilm.getId(),
+                        tmpFilm.getName(),
+                        tmpFilm.getDescription(),
+                        tmpFilm.getReleaseDate(),
+                        tmpFilm.getDuration(),
+                        Collections.unmodifiableSequencedSet(filmsGenres.get(tmpFilm.getId())),
+                        tmpFilm.getMpa()
+                ));
+            } else {
+                films.add(tmpFilm);
+            }
+        }
+        return films;
+    }
+
+    @Benchmark
+    public List<Film> filmHydrator(BenchmarkDatabase db) {
+        return db.jdbc.query(FIND_ALL_FILMS_WITH_GENRES_QUERY, db.hydrator);
+    }
+}
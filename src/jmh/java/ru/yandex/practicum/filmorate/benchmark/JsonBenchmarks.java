@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация списка фильмов в JSON тем же ObjectMapper, что собирает Spring Boot по умолчанию.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmarks {
+
+    @State(Scope.Thread)
+    public static class Films {
+
+        @Param({"10", "1000"})
+        public int listSize;
+
+        List<Film> films;
+
+        final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkDatabase db) {
+            films = db.filmStorage.getFilmsPage(null, Math.min(listSize, db.filmsCount));
+        }
+    }
+
+    @Benchmark
+    public byte[] serializeFilms(Films films) throws JsonProcessingException {
+        return films.objectMapper.writeValueAsBytes(films.films);
+    }
+}
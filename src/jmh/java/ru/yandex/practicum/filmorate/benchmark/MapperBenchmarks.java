@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import ru.yandex.practicum.filmorate.dao.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сборка объектов из строк без обращения к базе: строки каталога заранее читаются
+ * в SimpleResultSet, поэтому измеряется только работа FilmHydrator и UserRowMapper.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MapperBenchmarks {
+
+    private static final String FIND_ALL_FILMS_WITH_GENRES_QUERY = """
+            SELECT f.id, f.name, f.description, f.release_date, f.duration, f.mpa_rating_id, fg.genre_id
+            FROM films AS f
+            LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
+            ORDER BY f.id, fg.genre_id;
+            """;
+
+    private static final String FIND_ALL_USERS_QUERY = """
+            SELECT id, name, email, login, birthday
+            FROM users
+            ORDER BY id;
+            """;
+
+    @State(Scope.Thread)
+    public static class Rows {
+
+        SimpleResultSet films;
+
+        SimpleResultSet users;
+
+        final UserRowMapper userMapper = new UserRowMapper();
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkDatabase db) {
+            films = copyOf(db, FIND_ALL_FILMS_WITH_GENRES_QUERY);
+            users = copyOf(db, FIND_ALL_USERS_QUERY);
+        }
+
+        private static SimpleResultSet copyOf(BenchmarkDatabase db, String query) {
+            SimpleResultSet copy = new SimpleResultSet();
+            copy.setAutoClose(false);
+            db.jdbc.query(query, (RowCallbackHandler) rs -> {
+                ResultSetMetaData metaData = rs.getMetaData();
+                if (copy.getColumnCount() == 0) {
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        copy.addColumn(metaData.getColumnLabel(i), metaData.getColumnType(i),
+                                metaData.getPrecision(i), metaData.getScale(i));
+                    }
+                }
+                Object[] row = new Object[metaData.getColumnCount()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = rs.getObject(i + 1);
+                }
+                copy.addRow(row);
+            });
+            return copy;
+        }
+    }
+
+    @Benchmark
+    public List<Film> filmHydrator(BenchmarkDatabase db, Rows rows) throws SQLException {
+        rows.films.beforeFirst();
+        return db.hydrator.extractData(rows.films);
+    }
+
+    @Benchmark
+    public List<User> userRowMapper(Rows rows) throws SQLException {
+        rows.users.beforeFirst();
+        List<User> users = new ArrayList<>();
+        int rowNum = 0;
+        while (rows.users.next()) {
+            users.add(rows.userMapper.mapRow(rows.users, rowNum++));
+        }
+        return users;
+    }
+}
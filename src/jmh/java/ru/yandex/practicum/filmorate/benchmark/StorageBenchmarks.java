@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Горячие пути хранилищ и сервисов на заполненной базе H2.
+ * ID выбираются случайно, чтобы не измерять один и тот же закэшированный в H2 ряд.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmarks {
+
+    @Benchmark
+    public List<Film> getAllFilms(BenchmarkDatabase db) {
+        return db.filmStorage.getAllFilms();
+    }
+
+    @Benchmark
+    public List<Film> getTopFilms(BenchmarkDatabase db) {
+        return db.filmStorage.getTopFilms(10);
+    }
+
+    @Benchmark
+    public List<Film> getTopFilmsSql(BenchmarkDatabase db) {
+        return db.filmStorageWithoutIndex.getTopFilms(10);
+    }
+
+    @Benchmark
+    public Film getFilmById(BenchmarkDatabase db) {
+        return db.filmStorage.getFilmById(1L + ThreadLocalRandom.current().nextInt(db.filmsCount));
+    }
+
+    @Benchmark
+    public List<User> getAllCommonFriendsByIds(BenchmarkDatabase db) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long userId = 1L + random.nextInt(db.usersCount);
+        long anotherUserId = 1L + (userId + random.nextInt(db.usersCount - 1)) % db.usersCount;
+        return db.userService.getAllCommonFriendsByIds(userId, anotherUserId);
+    }
+}
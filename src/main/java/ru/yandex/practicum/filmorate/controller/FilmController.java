@@ -1,12 +1,22 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.FilmSimilarityService;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmLikeResult;
+import ru.yandex.practicum.filmorate.model.Page;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 @Slf4j
@@ -15,15 +25,56 @@ import java.util.List;
 public class FilmController {
     private final FilmService filmService;
 
+    private final FilmSimilarityService filmSimilarityService;
+
+    private final ObjectMapper objectMapper;
+
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, FilmSimilarityService filmSimilarityService,
+                          ObjectMapper objectMapper) {
         this.filmService = filmService;
+        this.filmSimilarityService = filmSimilarityService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
-    public List<Film> getAllFilms() {
-        log.info("Запрос на получение списка всех фильмов");
-        return filmService.getAllFilms();
+    public ResponseEntity<List<Film>> getAllFilms(@RequestParam(required = false) Integer limit,
+                                                  @RequestParam(required = false) Long after) {
+        if (limit == null && after == null) {
+            log.info("Запрос на получение списка всех фильмов");
+            return ResponseEntity.ok(filmService.getAllFilms());
+        }
+        log.info("Запрос на получение страницы списка фильмов");
+        Page<Film> page = filmService.getFilmsPage(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.nextCursor()));
+        }
+        return response.body(page.items());
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllFilms() {
+        log.info("Запрос на выгрузку всех фильмов в формате NDJSON");
+        StreamingResponseBody body = outputStream -> filmService.streamAllFilms(film -> {
+            try {
+                outputStream.write(objectMapper.writeValueAsBytes(film));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping("/search")
+    public List<Film> searchFilms(@RequestParam String q, @RequestParam(defaultValue = "10") int limit) {
+        log.info("Запрос на поиск фильмов по названию и описанию");
+        return filmService.searchFilms(q, limit);
     }
 
     @GetMapping("/{id}")
@@ -32,10 +83,18 @@ public class FilmController {
         return filmService.getFilmById(id);
     }
 
+    @GetMapping("/{id}/similar")
+    public List<Film> getSimilarFilms(@PathVariable Long id, @RequestParam(defaultValue = "10") int limit) {
+        log.info("Запрос на получение похожих фильмов");
+        return filmSimilarityService.getSimilarFilms(id, limit);
+    }
+
     @GetMapping("/popular")
-    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count) {
+    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count,
+                                      @RequestParam(required = false) Integer genreId,
+                                      @RequestParam(required = false) Integer year) {
         log.info("Запрос на получение списка n-лучших фильмов по кол-ву лайков");
-        return filmService.getPopularFilms(count);
+        return filmService.getPopularFilms(count, genreId, year);
     }
 
     @PostMapping
@@ -44,12 +103,24 @@ public class FilmController {
         return filmService.create(film);
     }
 
+    @PostMapping("/batch")
+    public List<Film> createAll(@RequestBody List<Film> films) {
+        log.info("Запрос на добавление списка фильмов в приложение");
+        return filmService.createAll(films);
+    }
+
     @PutMapping
     public Film update(@Valid @RequestBody Film film) {
         log.info("Запрос на обновление данных фильма");
         return filmService.update(film);
     }
 
+    @PutMapping("/likes/batch")
+    public List<FilmLikeResult> addLikes(@RequestBody List<FilmLike> likes) {
+        log.info("Запрос на пакетное добавление лайков к фильмам");
+        return filmService.addLikes(likes);
+    }
+
     @PutMapping("/{id}/like/{userId}")
     public void addLike(@PathVariable Long id, @PathVariable Long userId) {
         log.info("Запрос на добавление лайка к фильму по ID пользователя");
@@ -3,8 +3,12 @@ package ru.yandex.practicum.filmorate.controller;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.service.FilmRecommendationService;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
@@ -16,15 +20,30 @@ public class UserController {
 
     private final UserService userService;
 
+    private final FilmRecommendationService filmRecommendationService;
+
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, FilmRecommendationService filmRecommendationService) {
         this.userService = userService;
+        this.filmRecommendationService = filmRecommendationService;
     }
 
     @GetMapping
-    public List<User> getAllUsers() {
-        log.info("Запрос на получение списка всех пользователей");
-        return userService.getAllUsers();
+    public ResponseEntity<List<User>> getAllUsers(@RequestParam(required = false) Integer limit,
+                                                  @RequestParam(required = false) Long after) {
+        if (limit == null && after == null) {
+            log.info("Запрос на получение списка всех пользователей");
+            return ResponseEntity.ok(userService.getAllUsers());
+        }
+        log.info("Запрос на получение страницы списка пользователей");
+        Page<User> page = userService.getUsersPage(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.nextCursor()));
+        }
+        return response.body(page.items());
     }
 
     @GetMapping("/{id}")
@@ -39,12 +58,26 @@ public class UserController {
         return userService.getAllFriendsById(id);
     }
 
+    @GetMapping("/{id}/friends/recommendations")
+    public List<User> getFriendRecommendations(@PathVariable Long id,
+                                               @RequestParam(defaultValue = "10") int limit) {
+        log.info("Запрос на получение рекомендаций друзей пользователя");
+        return userService.getFriendRecommendations(id, limit);
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getAllCommonFriends(@PathVariable Long id, @PathVariable Long otherId) {
         log.info("Запрос на получение списка общих друзей пользователей");
         return userService.getAllCommonFriendsByIds(id, otherId);
     }
 
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getFilmRecommendations(@PathVariable Long id,
+                                             @RequestParam(defaultValue = "10") int limit) {
+        log.info("Запрос на получение рекомендаций фильмов для пользователя");
+        return filmRecommendationService.getRecommendations(id, limit);
+    }
+
     @PostMapping
     public User create(@Valid  @RequestBody User user) {
         log.info("Запрос на добавление пользователя в приложение");
@@ -0,0 +1,281 @@
+package ru.yandex.practicum.filmorate.dao.buffer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Буфер отложенной записи лайков. Для каждой пары (фильм, пользователь) хранится только последнее
+ * запрошенное состояние, поэтому лайк и последующее удаление лайка до сброса схлопываются в одну операцию.
+ * Перед сбросом одним запросом читается, какие из этих лайков уже есть в БД: состояние, совпадающее с БД
+ * (лайк, который уже стоит, или удаление лайка, которого нет), отбрасывается без записи, поэтому пара
+ * лайк-удаление нового лайка не доходит до БД вовсе.
+ * Запись в буфер не блокирует другие потоки: ConcurrentHashMap блокирует только отдельную корзину.
+ * Буфер сбрасывается в БД пакетами раз в flush-interval-ms или при накоплении max-pending записей,
+ * а также при остановке приложения. Записи в буфере и в сбрасываемом пакете занимают места из семафора
+ * на max-pending мест, которые освобождаются только после записи в БД. Когда мест нет (сброс медленный
+ * или БД недоступна), запись ждет до put-timeout-ms и затем отклоняется InternalServerException,
+ * поэтому при аварийном завершении теряется не более max-pending изменений.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.films.likes.write-behind.enabled", havingValue = "true")
+public class LikeWriteBuffer {
+
+    private final FilmStorage filmStorage;
+
+    private final long flushIntervalMs;
+
+    private final int maxPending;
+
+    private final long putTimeoutMs;
+
+    private final Map<FilmLike, Boolean> pending = new ConcurrentHashMap<>();
+
+    private final Semaphore capacity;
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "like-write-buffer-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Timer flushTimer;
+
+    private final Counter flushedLikes;
+
+    @Autowired
+    public LikeWriteBuffer(FilmStorage filmStorage,
+                           ObjectProvider<MeterRegistry> meterRegistry,
+                           @Value("${filmorate.films.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                           @Value("${filmorate.films.likes.write-behind.max-pending:10000}") int maxPending,
+                           @Value("${filmorate.films.likes.write-behind.put-timeout-ms:1000}") long putTimeoutMs) {
+        this.filmStorage = filmStorage;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxPending = maxPending;
+        this.putTimeoutMs = putTimeoutMs;
+        this.capacity = new Semaphore(maxPending);
+
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("filmorate.likes.buffer.pending", pending, Map::size).register(registry);
+            this.flushTimer = Timer.builder("filmorate.likes.buffer.flush").register(registry);
+            this.flushedLikes = Counter.builder("filmorate.likes.buffer.flushed").register(registry);
+        } else {
+            this.flushTimer = null;
+            this.flushedLikes = null;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        flushExecutor.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        flushExecutor.shutdown();
+        if (!flushExecutor.awaitTermination(flushIntervalMs * 10, TimeUnit.MILLISECONDS)) {
+            log.warn("LikeWriteBuffer: Не дождались завершения фонового сброса буфера");
+        }
+        flush();
+    }
+
+    public void addLike(Long filmId, Long userId) {
+        put(new FilmLike(filmId, userId), Boolean.TRUE);
+    }
+
+    public void removeLike(Long filmId, Long userId) {
+        put(new FilmLike(filmId, userId), Boolean.FALSE);
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Записывает в БД все накопленные изменения, кроме совпадающих с БД. Запись, измененная во время сброса,
+     * остается в буфере до следующего сброса. Если прочитать лайки из БД не удалось, записываются все изменения.
+     * Если БД недоступна, записи возвращаются в буфер, а исключение пробрасывается после попытки записать
+     * и лайки, и удаления.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        List<FilmLike> likesToAdd = new ArrayList<>();
+        List<FilmLike> likesToRemove = new ArrayList<>();
+        for (Map.Entry<FilmLike, Boolean> entry : pending.entrySet()) {
+            FilmLike like = entry.getKey();
+            Boolean liked = entry.getValue();
+            if (pending.remove(like, liked)) {
+                (liked ? likesToAdd : likesToRemove).add(like);
+            }
+        }
+        int skipped = skipUnchanged(likesToAdd, likesToRemove);
+
+        DataAccessException addFailure = write(likesToAdd, true);
+        DataAccessException removeFailure = write(likesToRemove, false);
+        if (addFailure != null || removeFailure != null) {
+            throw (addFailure != null) ? addFailure : removeFailure;
+        }
+
+        if (flushTimer != null) {
+            flushTimer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            flushedLikes.increment(likesToAdd.size() + likesToRemove.size());
+        }
+        log.debug("LikeWriteBuffer: Сброшено лайков: {}, удалений: {}, совпало с БД: {}",
+                likesToAdd.size(), likesToRemove.size(), skipped);
+    }
+
+    /**
+     * Убирает из пакетов лайки, которые уже есть в БД, и удаления лайков, которых в БД нет,
+     * и освобождает их места в буфере. Возвращает количество убранных записей.
+     */
+    private int skipUnchanged(List<FilmLike> likesToAdd, List<FilmLike> likesToRemove) {
+        if (likesToAdd.isEmpty() && likesToRemove.isEmpty()) {
+            return 0;
+        }
+        List<FilmLike> likes = new ArrayList<>(likesToAdd.size() + likesToRemove.size());
+        likes.addAll(likesToAdd);
+        likes.addAll(likesToRemove);
+        Set<FilmLike> existingLikes;
+        try {
+            existingLikes = filmStorage.getExistingLikes(likes);
+        } catch (DataAccessException e) {
+            log.warn("LikeWriteBuffer: Не удалось прочитать лайки из БД, записываются все изменения", e);
+            return 0;
+        }
+        int sizeBefore = likes.size();
+        likesToAdd.removeIf(existingLikes::contains);
+        likesToRemove.removeIf(like -> !existingLikes.contains(like));
+        int skipped = sizeBefore - likesToAdd.size() - likesToRemove.size();
+        capacity.release(skipped);
+        return skipped;
+    }
+
+    private void put(FilmLike like, Boolean liked) {
+        // новое состояние уже ожидающей записи не занимает дополнительного места
+        if (pending.replace(like, liked) != null) {
+            return;
+        }
+        acquireCapacity();
+        if (pending.put(like, liked) != null) {
+            capacity.release();
+        }
+        if (capacity.availablePermits() == 0) {
+            requestFlush();
+        }
+    }
+
+    private void acquireCapacity() {
+        if (capacity.tryAcquire()) {
+            return;
+        }
+        requestFlush();
+        try {
+            if (capacity.tryAcquire(putTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("LikeWriteBuffer: Буфер лайков заполнен ({} записей), запись отклонена", maxPending);
+        throw new InternalServerException("LikeWriteBuffer: Буфер лайков заполнен, повторите запрос позже");
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                flushExecutor.execute(() -> {
+                    flushRequested.set(false);
+                    flushQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                // приложение останавливается, буфер будет сброшен в stop()
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("LikeWriteBuffer: Ошибка при сбросе буфера лайков", e);
+        }
+    }
+
+    /**
+     * Пакетная запись. Если пакет нарушает ограничения БД (например, фильм удален после постановки лайка
+     * в буфер), лайки записываются по одному, а отклоненные - отбрасываются. При прочих ошибках БД
+     * записи возвращаются в буфер, если за это время для них не поступило более нового состояния,
+     * и возвращается исключение. Место в буфере освобождается, только когда запись покинула его насовсем.
+     */
+    private DataAccessException write(List<FilmLike> likes, boolean liked) {
+        if (likes.isEmpty()) {
+            return null;
+        }
+        try {
+            apply(likes, liked);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("LikeWriteBuffer: Пакет из {} записей отклонен, запись по одной", likes.size());
+            for (FilmLike like : likes) {
+                try {
+                    apply(List.of(like), liked);
+                } catch (DataIntegrityViolationException ex) {
+                    log.warn("LikeWriteBuffer: Лайк фильма с ID: {} пользователем с ID: {} отброшен",
+                            like.filmId(), like.userId());
+                }
+            }
+        } catch (DataAccessException e) {
+            for (FilmLike like : likes) {
+                // более новое состояние уже занимает свое место в буфере
+                if (pending.putIfAbsent(like, liked) != null) {
+                    capacity.release();
+                }
+            }
+            return e;
+        }
+        capacity.release(likes.size());
+        return null;
+    }
+
+    private void apply(List<FilmLike> likes, boolean liked) {
+        if (liked) {
+            filmStorage.addLikes(likes);
+        } else {
+            filmStorage.removeLikes(likes);
+        }
+    }
+}
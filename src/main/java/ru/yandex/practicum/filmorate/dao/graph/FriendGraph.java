@@ -0,0 +1,383 @@
+package ru.yandex.practicum.filmorate.dao.graph;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Граф дружбы в памяти приложения в формате CSR (compressed sparse row):
+ * отсортированный массив ID пользователей, массив смещений строк и массив ID друзей,
+ * отсортированный внутри каждой строки. Изменения после загрузки хранятся в небольшом
+ * наложении (пользователь -> друг -> добавлен/удален) и периодически вливаются в новый CSR.
+ * Общие друзья считаются пересечением отсортированных массивов без упаковки в Long,
+ * если у обоих пользователей нет изменений в наложении.
+ * Память: 8 байт на ребро и 12 байт на пользователя с друзьями; фактический размер массивов CSR
+ * пишется в лог после каждой перестройки. Для сравнения, Set<Long> по расчету из размеров объектов HotSpot
+ * со сжатыми ссылками (HashMap.Node 32 байта, Long 16 байт, ссылка в таблице при загрузке 0.75)
+ * занимает около 53 байт на ребро; это оценка, а не измерение.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.users.friend-graph.enabled", havingValue = "true")
+public class FriendGraph {
+
+    private static final long[] NO_FRIENDS = new long[0];
+
+    private final JdbcOperations jdbc;
+
+    private final int maxDelta;
+
+    private final long compactIntervalMs;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, TreeMap<Long, Boolean>> delta = new HashMap<>();
+
+    private int deltaSize;
+
+    private volatile Csr csr = new Csr(NO_FRIENDS, new int[]{0}, NO_FRIENDS);
+
+    private final AtomicBoolean compactionRequested = new AtomicBoolean();
+
+    private final ScheduledExecutorService compactionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "friend-graph-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public FriendGraph(JdbcOperations jdbc,
+                       @Value("${filmorate.users.friend-graph.max-delta:10000}") int maxDelta,
+                       @Value("${filmorate.users.friend-graph.compact-interval-ms:5000}") long compactIntervalMs) {
+        this.jdbc = jdbc;
+        this.maxDelta = maxDelta;
+        this.compactIntervalMs = compactIntervalMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        rebuild();
+        compactionExecutor.scheduleWithFixedDelay(this::compactQuietly, compactIntervalMs, compactIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        compactionExecutor.shutdownNow();
+    }
+
+    /**
+     * Полная загрузка графа из таблицы user_friend.
+     */
+    public synchronized void rebuild() {
+        final String FIND_ALL_FRIENDSHIPS_QUERY = """
+                /* friendGraph.rebuild */
+                SELECT user_id, friend_id
+                FROM user_friend
+                ORDER BY user_id, friend_id;
+                """;
+
+        CsrBuilder builder = new CsrBuilder(1024, 1024);
+        long[] currentUserId = {Long.MIN_VALUE};
+        jdbc.query(FIND_ALL_FRIENDSHIPS_QUERY, (RowCallbackHandler) rs -> {
+            long userId = rs.getLong(1);
+            if (userId != currentUserId[0]) {
+                builder.startRow(userId);
+                currentUserId[0] = userId;
+            }
+            builder.addFriend(rs.getLong(2));
+        });
+
+        lock.writeLock().lock();
+        try {
+            csr = builder.build();
+            delta.clear();
+            deltaSize = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logMemory();
+    }
+
+    public void addFriend(long userId, long friendId) {
+        change(userId, friendId, Boolean.TRUE);
+    }
+
+    public void removeFriend(long userId, long friendId) {
+        change(userId, friendId, Boolean.FALSE);
+    }
+
+    /**
+     * Отсортированный массив ID друзей пользователя.
+     */
+    public long[] getFriendsIds(long userId) {
+        lock.readLock().lock();
+        try {
+            Csr snapshot = csr;
+            TreeMap<Long, Boolean> changes = delta.get(userId);
+            int row = snapshot.row(userId);
+            if (changes == null) {
+                return (row < 0) ? NO_FRIENDS : Arrays.copyOfRange(snapshot.friends,
+                        snapshot.offsets[row], snapshot.offsets[row + 1]);
+            }
+            return applyChanges(snapshot, row, changes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Отсортированный массив ID общих друзей двух пользователей.
+     */
+    public long[] getCommonFriendsIds(long userId, long anotherUserId) {
+        lock.readLock().lock();
+        try {
+            Csr snapshot = csr;
+            if (!delta.containsKey(userId) && !delta.containsKey(anotherUserId)) {
+                int row = snapshot.row(userId);
+                int anotherRow = snapshot.row(anotherUserId);
+                if (row < 0 || anotherRow < 0) {
+                    return NO_FRIENDS;
+                }
+                return intersect(snapshot.friends, snapshot.offsets[row], snapshot.offsets[row + 1],
+                        snapshot.friends, snapshot.offsets[anotherRow], snapshot.offsets[anotherRow + 1]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        long[] friends = getFriendsIds(userId);
+        long[] anotherFriends = getFriendsIds(anotherUserId);
+        return intersect(friends, 0, friends.length, anotherFriends, 0, anotherFriends.length);
+    }
+
+    public long getEdgeCount() {
+        return csr.friends.length;
+    }
+
+    public int getDeltaSize() {
+        lock.readLock().lock();
+        try {
+            return deltaSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Вливает наложение в новый CSR. Новый массив строится без блокировки по копии наложения,
+     * после замены из наложения удаляются только те записи, которые не изменились за время построения.
+     */
+    public synchronized void compact() {
+        Csr snapshot;
+        Map<Long, TreeMap<Long, Boolean>> changes = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (deltaSize == 0) {
+                return;
+            }
+            snapshot = csr;
+            delta.forEach((userId, userChanges) -> changes.put(userId, new TreeMap<>(userChanges)));
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Csr compacted = merge(snapshot, changes);
+
+        lock.writeLock().lock();
+        try {
+            csr = compacted;
+            changes.forEach((userId, userChanges) -> {
+                TreeMap<Long, Boolean> current = delta.get(userId);
+                if (current == null) {
+                    return;
+                }
+                userChanges.forEach((friendId, added) -> {
+                    if (current.remove(friendId, added)) {
+                        deltaSize--;
+                    }
+                });
+                if (current.isEmpty()) {
+                    delta.remove(userId);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logMemory();
+    }
+
+    private void change(long userId, long friendId, Boolean added) {
+        lock.writeLock().lock();
+        try {
+            if (delta.computeIfAbsent(userId, id -> new TreeMap<>()).put(friendId, added) == null) {
+                deltaSize++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (getDeltaSize() >= maxDelta && compactionRequested.compareAndSet(false, true)) {
+            try {
+                compactionExecutor.execute(() -> {
+                    compactionRequested.set(false);
+                    compactQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                compactionRequested.set(false);
+            }
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            log.error("FriendGraph: Ошибка при слиянии изменений графа дружбы", e);
+        }
+    }
+
+    private void logMemory() {
+        Csr snapshot = csr;
+        long edges = snapshot.friends.length;
+        long bytes = 8L * snapshot.userIds.length + 4L * snapshot.offsets.length + 8L * edges;
+        log.info("FriendGraph: Пользователей: {}, ребер: {}, массивы CSR: {} байт, байт на ребро: {}",
+                snapshot.userIds.length, edges, bytes, (edges == 0) ? 0 : bytes / edges);
+    }
+
+    private static Csr merge(Csr base, Map<Long, TreeMap<Long, Boolean>> changes) {
+        long[] changedUsersIds = changes.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        CsrBuilder builder = new CsrBuilder(base.userIds.length + changedUsersIds.length,
+                base.friends.length + changes.values().stream().mapToInt(TreeMap::size).sum());
+        int i = 0;
+        int j = 0;
+        while (i < base.userIds.length || j < changedUsersIds.length) {
+            if (j == changedUsersIds.length || (i < base.userIds.length && base.userIds[i] < changedUsersIds[j])) {
+                builder.addRow(base.userIds[i], base.friends, base.offsets[i], base.offsets[i + 1]);
+                i++;
+            } else {
+                long userId = changedUsersIds[j];
+                int row = (i < base.userIds.length && base.userIds[i] == userId) ? i++ : -1;
+                long[] friends = applyChanges(base, row, changes.get(userId));
+                builder.addRow(userId, friends, 0, friends.length);
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    private static long[] applyChanges(Csr base, int row, TreeMap<Long, Boolean> changes) {
+        int from = (row < 0) ? 0 : base.offsets[row];
+        int to = (row < 0) ? 0 : base.offsets[row + 1];
+        long[] result = new long[to - from + changes.size()];
+        int size = 0;
+        int idx = from;
+        for (Map.Entry<Long, Boolean> change : changes.entrySet()) {
+            long friendId = change.getKey();
+            while (idx < to && base.friends[idx] < friendId) {
+                result[size++] = base.friends[idx++];
+            }
+            if (idx < to && base.friends[idx] == friendId) {
+                idx++;
+            }
+            if (change.getValue()) {
+                result[size++] = friendId;
+            }
+        }
+        while (idx < to) {
+            result[size++] = base.friends[idx++];
+        }
+        return (size == result.length) ? result : Arrays.copyOf(result, size);
+    }
+
+    private static long[] intersect(long[] a, int aFrom, int aTo, long[] b, int bFrom, int bTo) {
+        long[] result = new long[Math.min(aTo - aFrom, bTo - bFrom)];
+        int size = 0;
+        while (aFrom < aTo && bFrom < bTo) {
+            if (a[aFrom] < b[bFrom]) {
+                aFrom++;
+            } else if (a[aFrom] > b[bFrom]) {
+                bFrom++;
+            } else {
+                result[size++] = a[aFrom];
+                aFrom++;
+                bFrom++;
+            }
+        }
+        return (size == result.length) ? result : Arrays.copyOf(result, size);
+    }
+
+    private record Csr(long[] userIds, int[] offsets, long[] friends) {
+        int row(long userId) {
+            int row = Arrays.binarySearch(userIds, userId);
+            return (row < 0) ? -1 : row;
+        }
+    }
+
+    /**
+     * Построение CSR по строкам, упорядоченным по ID пользователя. Пустые строки не сохраняются.
+     */
+    private static final class CsrBuilder {
+        private long[] userIds;
+        private int[] offsets;
+        private long[] friends;
+        private int users;
+        private int edges;
+
+        CsrBuilder(int usersCapacity, int edgesCapacity) {
+            this.userIds = new long[Math.max(usersCapacity, 1)];
+            this.offsets = new int[Math.max(usersCapacity, 1) + 1];
+            this.friends = new long[Math.max(edgesCapacity, 1)];
+        }
+
+        void startRow(long userId) {
+            if (users == userIds.length) {
+                userIds = Arrays.copyOf(userIds, users * 2);
+                offsets = Arrays.copyOf(offsets, users * 2 + 1);
+            }
+            userIds[users++] = userId;
+            offsets[users] = edges;
+        }
+
+        void addFriend(long friendId) {
+            if (edges == friends.length) {
+                friends = Arrays.copyOf(friends, edges * 2);
+            }
+            friends[edges++] = friendId;
+            offsets[users] = edges;
+        }
+
+        void addRow(long userId, long[] rowFriends, int from, int to) {
+            if (from == to) {
+                return;
+            }
+            startRow(userId);
+            if (friends.length - edges < to - from) {
+                friends = Arrays.copyOf(friends, Math.max(friends.length * 2, edges + to - from));
+            }
+            System.arraycopy(rowFriends, from, friends, edges, to - from);
+            edges += to - from;
+            offsets[users] = edges;
+        }
+
+        Csr build() {
+            return new Csr(Arrays.copyOf(userIds, users), Arrays.copyOf(offsets, users + 1),
+                    Arrays.copyOf(friends, edges));
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collector;
+
+/**
+ * Индекс лайков в памяти: для каждого пользователя - сжатое битовое множество (Roaring) ID фильмов,
+ * которым он поставил лайк, и обратный индекс: для каждого фильма - множество ID пользователей, поставивших лайк.
+ * Оба индекса обновляются при каждом лайке на месте, без копирования множества: запись выполняется внутри
+ * compute ConcurrentHashMap под монитором самого множества, чтение - под тем же монитором, поэтому
+ * блокировка берется на один ключ, а не на весь индекс. Наружу множества не отдаются: методы чтения возвращают
+ * счетчики, ограниченные массивы ID или копии. Roaring хранит 32-битные значения, поэтому ID больше
+ * Integer.MAX_VALUE отклоняются с InternalServerException. Сходство пользователей - мощность пересечения
+ * множеств, перебор пользователей выполняется параллельно.
+ */
+@Slf4j
+@Component
+public class FilmLikeBitmapIndex implements FilmLikeListener {
+
+    private static final String PROGRAM_LEVEL = "FilmLikeBitmapIndex";
+
+    private static final int[] NO_IDS = new int[0];
+
+    private final JdbcOperations jdbc;
+
+    private final Map<Long, RoaringBitmap> filmsByUserId = new ConcurrentHashMap<>();
+
+    private final Map<Long, RoaringBitmap> usersByFilmId = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FilmLikeBitmapIndex(JdbcOperations jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        final String FIND_ALL_LIKES_QUERY = """
+                /* filmLikeBitmapIndex.rebuild */
+                SELECT user_id, film_id
+                FROM film_like
+                ORDER BY user_id, film_id;
+                """;
+
+        Map<Long, RoaringBitmap> loaded = new HashMap<>();
+        Map<Long, RoaringBitmap> loadedLikers = new HashMap<>();
+        jdbc.query(FIND_ALL_LIKES_QUERY, (RowCallbackHandler) rs -> {
+            long userId = rs.getLong(1);
+            long filmId = rs.getLong(2);
+            loaded.computeIfAbsent(userId, id -> new RoaringBitmap()).add(toIndex(filmId, "фильма"));
+            loadedLikers.computeIfAbsent(filmId, id -> new RoaringBitmap()).add(toIndex(userId, "пользователя"));
+        });
+        loaded.values().forEach(RoaringBitmap::runOptimize);
+        loadedLikers.values().forEach(RoaringBitmap::runOptimize);
+
+        filmsByUserId.clear();
+        filmsByUserId.putAll(loaded);
+        usersByFilmId.clear();
+        usersByFilmId.putAll(loadedLikers);
+        log.info(PROGRAM_LEVEL + ": Загружены лайки пользователей: {}", loaded.size());
+    }
+
+    @Override
+    public void onLikeAdded(long filmId, long userId) {
+        int filmIndex = toIndex(filmId, "фильма");
+        int userIndex = toIndex(userId, "пользователя");
+        add(filmsByUserId, userId, filmIndex);
+        add(usersByFilmId, filmId, userIndex);
+    }
+
+    @Override
+    public void onLikeRemoved(long filmId, long userId) {
+        int filmIndex = toIndex(filmId, "фильма");
+        int userIndex = toIndex(userId, "пользователя");
+        remove(filmsByUserId, userId, filmIndex);
+        remove(usersByFilmId, filmId, userIndex);
+    }
+
+    public int getLikesCount(long filmId) {
+        RoaringBitmap users = usersByFilmId.get(filmId);
+        if (users == null) {
+            return 0;
+        }
+        synchronized (users) {
+            return users.getCardinality();
+        }
+    }
+
+    /**
+     * Не более limit ID фильмов с лайком пользователя, по возрастанию.
+     */
+    public int[] getLikedFilmsIds(long userId, int limit) {
+        return firstIds(filmsByUserId.get(userId), limit);
+    }
+
+    /**
+     * Не более limit ID пользователей, поставивших лайк фильму, по возрастанию.
+     */
+    public int[] getLikersIds(long filmId, int limit) {
+        return firstIds(usersByFilmId.get(filmId), limit);
+    }
+
+    /**
+     * Копия множества фильмов с лайком пользователя.
+     */
+    public RoaringBitmap copyLikedFilms(long userId) {
+        RoaringBitmap films = filmsByUserId.get(userId);
+        if (films == null) {
+            return new RoaringBitmap();
+        }
+        synchronized (films) {
+            return films.clone();
+        }
+    }
+
+    /**
+     * Фильмы с лайком пользователя, которых нет в excluded, без промежуточной копии множества пользователя.
+     */
+    public RoaringBitmap getLikedFilmsExcept(long userId, RoaringBitmap excluded) {
+        RoaringBitmap films = filmsByUserId.get(userId);
+        if (films == null) {
+            return new RoaringBitmap();
+        }
+        synchronized (films) {
+            return RoaringBitmap.andNot(films, excluded);
+        }
+    }
+
+    /**
+     * Не более limit пользователей с наибольшим числом общих с userId лайков, по убыванию.
+     */
+    public List<Neighbor> findNeighbors(long userId, int limit) {
+        RoaringBitmap likedFilms = copyLikedFilms(userId);
+        if (likedFilms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        return filmsByUserId.entrySet().parallelStream()
+                .filter(entry -> entry.getKey() != userId)
+                .map(entry -> new Neighbor(entry.getKey(), andCardinality(likedFilms, entry.getValue())))
+                .filter(neighbor -> neighbor.commonLikes() > 0)
+                .collect(topNeighbors(limit));
+    }
+
+    private static void add(Map<Long, RoaringBitmap> index, long key, int value) {
+        index.compute(key, (id, bitmap) -> {
+            RoaringBitmap target = (bitmap == null) ? new RoaringBitmap() : bitmap;
+            synchronized (target) {
+                target.add(value);
+            }
+            return target;
+        });
+    }
+
+    private static void remove(Map<Long, RoaringBitmap> index, long key, int value) {
+        index.computeIfPresent(key, (id, bitmap) -> {
+            synchronized (bitmap) {
+                bitmap.remove(value);
+                return bitmap.isEmpty() ? null : bitmap;
+            }
+        });
+    }
+
+    private static int[] firstIds(RoaringBitmap bitmap, int limit) {
+        if (bitmap == null || limit <= 0) {
+            return NO_IDS;
+        }
+        synchronized (bitmap) {
+            int[] ids = new int[Math.min(limit, bitmap.getCardinality())];
+            IntIterator iterator = bitmap.getIntIterator();
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = iterator.next();
+            }
+            return ids;
+        }
+    }
+
+    private static int andCardinality(RoaringBitmap likedFilms, RoaringBitmap otherFilms) {
+        synchronized (otherFilms) {
+            return RoaringBitmap.andCardinality(likedFilms, otherFilms);
+        }
+    }
+
+    private static int toIndex(long id, String owner) {
+        if (id < 0 || id > Integer.MAX_VALUE) {
+            throw new InternalServerException(PROGRAM_LEVEL + ": ID " + owner + " " + id
+                    + " не помещается в индекс лайков, максимальный ID: " + Integer.MAX_VALUE);
+        }
+        return (int) id;
+    }
+
+    private static Collector<Neighbor, PriorityQueue<Neighbor>, List<Neighbor>> topNeighbors(int limit) {
+        Comparator<Neighbor> byRank = Comparator.comparingInt(Neighbor::commonLikes).reversed()
+                .thenComparingLong(Neighbor::userId);
+        return Collector.of(
+                () -> new PriorityQueue<>(byRank.reversed()),
+                (queue, neighbor) -> offer(queue, neighbor, limit),
+                (queue, other) -> {
+                    other.forEach(neighbor -> offer(queue, neighbor, limit));
+                    return queue;
+                },
+                queue -> queue.stream().sorted(byRank).toList()
+        );
+    }
+
+    private static void offer(PriorityQueue<Neighbor> queue, Neighbor neighbor, int limit) {
+        queue.add(neighbor);
+        if (queue.size() > limit) {
+            queue.poll();
+        }
+    }
+
+    public record Neighbor(long userId, int commonLikes) {
+    }
+}
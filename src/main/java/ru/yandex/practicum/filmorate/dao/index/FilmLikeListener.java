@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+/**
+ * Получатель изменений таблицы film_like. Вызывается хранилищем только для реально
+ * вставленных или удаленных строк, поэтому повторные лайки не приходят.
+ */
+public interface FilmLikeListener {
+
+    void onLikeAdded(long filmId, long userId);
+
+    void onLikeRemoved(long filmId, long userId);
+}
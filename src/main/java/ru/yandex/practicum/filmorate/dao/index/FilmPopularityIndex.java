@@ -0,0 +1,246 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс популярности фильмов, хранящийся в памяти приложения.
+ * Содержит счетчик лайков каждого фильма и упорядоченный по убыванию лайков набор,
+ * поэтому выборка n-лучших фильмов выполняется за O(n) без агрегации в БД.
+ * Такие же наборы ведутся для каждого жанра, каждого года выпуска и каждой пары жанр-год,
+ * поэтому топ с любым сочетанием фильтров стоит столько же, сколько общий. Пара жанр-год
+ * упакована в long и добавляет по одной записи на жанр фильма с известным годом.
+ * При запуске нескольких экземпляров приложения индекс отключается свойством
+ * filmorate.films.popularity-index.enabled=false, и топ строится по столбцу films.like_count.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.films.popularity-index.enabled", havingValue = "true", matchIfMissing = true)
+public class FilmPopularityIndex {
+
+    private static final int[] NO_GENRES = new int[0];
+
+    private static final int UNKNOWN_YEAR = 0;
+
+    private final JdbcOperations jdbc;
+
+    private final Map<Long, Long> likesByFilmId = new HashMap<>();
+
+    private final NavigableSet<RankEntry> ranking = new TreeSet<>();
+
+    private final Map<Long, Partitions> partitionsByFilmId = new HashMap<>();
+
+    private final Map<Integer, NavigableSet<RankEntry>> rankingByGenreId = new HashMap<>();
+
+    private final Map<Integer, NavigableSet<RankEntry>> rankingByYear = new HashMap<>();
+
+    private final Map<Long, NavigableSet<RankEntry>> rankingByGenreAndYear = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public FilmPopularityIndex(JdbcOperations jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        final String FIND_FILMS_IDS_WITH_GENRES_IDS_QUERY = """
+                /* filmPopularityIndex.rebuild.genres */
+                SELECT film_id, genre_id
+                FROM film_genre
+                ORDER BY film_id, genre_id;
+                """;
+        final String FIND_FILMS_IDS_WITH_LIKES_COUNT_QUERY = """
+                /* filmPopularityIndex.rebuild.likes */
+                SELECT f.id, EXTRACT(YEAR FROM f.release_date) AS release_year, COUNT(fl.user_id) AS likes_count
+                FROM films AS f
+                LEFT OUTER JOIN film_like AS fl ON f.id = fl.film_id
+                GROUP BY f.id, f.release_date;
+                """;
+
+        lock.writeLock().lock();
+        try {
+            likesByFilmId.clear();
+            ranking.clear();
+            partitionsByFilmId.clear();
+            rankingByGenreId.clear();
+            rankingByYear.clear();
+            rankingByGenreAndYear.clear();
+
+            Map<Long, List<Integer>> genresByFilmId = new HashMap<>();
+            jdbc.query(FIND_FILMS_IDS_WITH_GENRES_IDS_QUERY, (RowCallbackHandler) rs -> genresByFilmId
+                    .computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>())
+                    .add(rs.getInt("genre_id")));
+            jdbc.query(FIND_FILMS_IDS_WITH_LIKES_COUNT_QUERY, (RowCallbackHandler) rs -> {
+                long filmId = rs.getLong("id");
+                long likes = rs.getLong("likes_count");
+                int[] genresIds = genresByFilmId.getOrDefault(filmId, List.of()).stream()
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+                Partitions partitions = new Partitions(rs.getInt("release_year"), genresIds);
+                likesByFilmId.put(filmId, likes);
+                partitionsByFilmId.put(filmId, partitions);
+                addEntry(new RankEntry(likes, filmId), partitions);
+            });
+            log.info("FilmPopularityIndex: Индекс популярности построен, фильмов: {}, жанров: {}, лет: {}",
+                    likesByFilmId.size(), rankingByGenreId.size(), rankingByYear.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавление нового фильма или перенос существующего в наборы его текущих жанров и года выпуска.
+     */
+    public void putFilm(long filmId, LocalDate releaseDate, Collection<Integer> genresIds) {
+        Partitions partitions = new Partitions(
+                (releaseDate == null) ? UNKNOWN_YEAR : releaseDate.getYear(),
+                (genresIds == null) ? NO_GENRES : genresIds.stream().mapToInt(Integer::intValue).toArray()
+        );
+
+        lock.writeLock().lock();
+        try {
+            Long likes = likesByFilmId.putIfAbsent(filmId, 0L);
+            RankEntry entry = new RankEntry((likes == null) ? 0L : likes, filmId);
+            if (likes != null) {
+                removeEntry(entry, partitionsByFilmId.get(filmId));
+            }
+            partitionsByFilmId.put(filmId, partitions);
+            addEntry(entry, partitions);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void incrementLikes(long filmId) {
+        changeLikes(filmId, 1L);
+    }
+
+    public void addLikes(long filmId, long count) {
+        changeLikes(filmId, count);
+    }
+
+    public void removeLikes(long filmId, long count) {
+        changeLikes(filmId, -count);
+    }
+
+    public void decrementLikes(long filmId) {
+        changeLikes(filmId, -1L);
+    }
+
+    public long getLikes(long filmId) {
+        lock.readLock().lock();
+        try {
+            return likesByFilmId.getOrDefault(filmId, 0L);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Long> getTopFilmsIds(int limit) {
+        return getTopFilmsIds(limit, null, null);
+    }
+
+    /**
+     * Не более limit ID фильмов по убыванию лайков; genreId и year - необязательные фильтры.
+     */
+    public List<Long> getTopFilmsIds(int limit, Integer genreId, Integer year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<RankEntry> source = ranking;
+            if (genreId != null && year != null) {
+                source = rankingByGenreAndYear.getOrDefault(genreAndYear(genreId, year),
+                        Collections.emptyNavigableSet());
+            } else if (genreId != null) {
+                source = rankingByGenreId.getOrDefault(genreId, Collections.emptyNavigableSet());
+            } else if (year != null) {
+                source = rankingByYear.getOrDefault(year, Collections.emptyNavigableSet());
+            }
+
+            List<Long> filmsIds = new ArrayList<>(Math.min(Math.max(limit, 0), source.size()));
+            Iterator<RankEntry> iterator = source.iterator();
+            while (filmsIds.size() < limit && iterator.hasNext()) {
+                filmsIds.add(iterator.next().filmId());
+            }
+            return filmsIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void changeLikes(long filmId, long delta) {
+        lock.writeLock().lock();
+        try {
+            Long likes = likesByFilmId.get(filmId);
+            long oldLikes = (likes == null) ? 0L : likes;
+            long newLikes = Math.max(oldLikes + delta, 0L);
+            Partitions partitions = partitionsByFilmId.computeIfAbsent(filmId,
+                    id -> new Partitions(UNKNOWN_YEAR, NO_GENRES));
+            if (likes != null) {
+                removeEntry(new RankEntry(oldLikes, filmId), partitions);
+            }
+            likesByFilmId.put(filmId, newLikes);
+            addEntry(new RankEntry(newLikes, filmId), partitions);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addEntry(RankEntry entry, Partitions partitions) {
+        ranking.add(entry);
+        for (int genreId : partitions.genresIds()) {
+            rankingByGenreId.computeIfAbsent(genreId, id -> new TreeSet<>()).add(entry);
+        }
+        if (partitions.year() != UNKNOWN_YEAR) {
+            rankingByYear.computeIfAbsent(partitions.year(), id -> new TreeSet<>()).add(entry);
+            for (int genreId : partitions.genresIds()) {
+                rankingByGenreAndYear.computeIfAbsent(genreAndYear(genreId, partitions.year()),
+                        id -> new TreeSet<>()).add(entry);
+            }
+        }
+    }
+
+    private void removeEntry(RankEntry entry, Partitions partitions) {
+        ranking.remove(entry);
+        for (int genreId : partitions.genresIds()) {
+            removeFromPartition(rankingByGenreId, genreId, entry);
+        }
+        removeFromPartition(rankingByYear, partitions.year(), entry);
+        for (int genreId : partitions.genresIds()) {
+            removeFromPartition(rankingByGenreAndYear, genreAndYear(genreId, partitions.year()), entry);
+        }
+    }
+
+    private static long genreAndYear(int genreId, int year) {
+        return ((long) genreId << 32) | (year & 0xFFFFFFFFL);
+    }
+
+    private static <K> void removeFromPartition(Map<K, NavigableSet<RankEntry>> rankings, K key, RankEntry entry) {
+        NavigableSet<RankEntry> partition = rankings.get(key);
+        if (partition != null && partition.remove(entry) && partition.isEmpty()) {
+            rankings.remove(key);
+        }
+    }
+
+    private record Partitions(int year, int[] genresIds) {
+    }
+
+    private record RankEntry(long likes, long filmId) implements Comparable<RankEntry> {
+        @Override
+        public int compareTo(RankEntry other) {
+            int byLikes = Long.compare(other.likes, likes);
+            return (byLikes != 0) ? byLikes : Long.compare(filmId, other.filmId);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс в памяти по названию и описанию фильмов. Для каждого терма хранится
+ * отсортированный массив ID фильмов, отдельно для названия и для описания. Запрос находит фильмы,
+ * содержащие все его термы. Последний терм не короче min-prefix-length символов сопоставляется как префикс:
+ * объединяются списки фильмов всех термов с этим префиксом, без ограничения их числа. Более короткий
+ * последний терм сопоставляется точно, так как под короткий префикс попадает большая часть словаря.
+ * Оценка: сумма idf термов (совпадение в названии весит name-weight), умноженная
+ * на 1 + likes-weight * ln(1 + лайки). При создании и обновлении фильма меняются только его термы.
+ * При запуске нескольких экземпляров приложения индекс видит только фильмы, измененные в своем экземпляре.
+ */
+@Slf4j
+@Component
+public class FilmSearchIndex implements FilmLikeListener {
+
+    private static final int[] NO_FILMS = new int[0];
+
+    private final JdbcOperations jdbc;
+
+    private final double nameWeight;
+
+    private final double likesWeight;
+
+    private final int minPrefixLength;
+
+    private final NavigableMap<String, int[]> nameIndex = new TreeMap<>();
+
+    private final NavigableMap<String, int[]> descriptionIndex = new TreeMap<>();
+
+    private final Map<Integer, Document> documents = new HashMap<>();
+
+    private final Map<Integer, Long> likesByFilmId = new ConcurrentHashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public FilmSearchIndex(JdbcOperations jdbc,
+                           @Value("${filmorate.films.search.name-weight:2.0}") double nameWeight,
+                           @Value("${filmorate.films.search.likes-weight:0.1}") double likesWeight,
+                           @Value("${filmorate.films.search.min-prefix-length:3}") int minPrefixLength) {
+        this.jdbc = jdbc;
+        this.nameWeight = nameWeight;
+        this.likesWeight = likesWeight;
+        this.minPrefixLength = minPrefixLength;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        final String FIND_ALL_FILMS_TEXT_QUERY = """
+                /* filmSearchIndex.rebuild */
+                SELECT id, name, description, like_count
+                FROM films
+                ORDER BY id;
+                """;
+
+        Map<String, List<Integer>> namePostings = new HashMap<>();
+        Map<String, List<Integer>> descriptionPostings = new HashMap<>();
+        Map<Integer, Document> loaded = new HashMap<>();
+        Map<Integer, Long> likes = new HashMap<>();
+        jdbc.query(FIND_ALL_FILMS_TEXT_QUERY, (RowCallbackHandler) rs -> {
+            int filmId = toFilmIndex(rs.getLong(1));
+            Document document = new Document(FilmSearchTokenizer.tokenize(rs.getString(2)),
+                    FilmSearchTokenizer.tokenize(rs.getString(3)));
+            document.nameTerms().forEach(term -> namePostings.computeIfAbsent(term, t -> new ArrayList<>())
+                    .add(filmId));
+            document.descriptionTerms().forEach(term -> descriptionPostings
+                    .computeIfAbsent(term, t -> new ArrayList<>()).add(filmId));
+            loaded.put(filmId, document);
+            likes.put(filmId, rs.getLong(4));
+        });
+
+        lock.writeLock().lock();
+        try {
+            nameIndex.clear();
+            descriptionIndex.clear();
+            namePostings.forEach((term, filmsIds) -> nameIndex.put(term, toArray(filmsIds)));
+            descriptionPostings.forEach((term, filmsIds) -> descriptionIndex.put(term, toArray(filmsIds)));
+            documents.clear();
+            documents.putAll(loaded);
+            likesByFilmId.clear();
+            likesByFilmId.putAll(likes);
+            log.info("FilmSearchIndex: Поисковый индекс построен, фильмов: {}, термов: {}",
+                    documents.size(), nameIndex.size() + descriptionIndex.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавление нового или замена проиндексированного текста фильма.
+     */
+    public void put(Film film) {
+        putAll(List.of(film));
+    }
+
+    public void putAll(Collection<Film> films) {
+        List<Map.Entry<Integer, Document>> tokenized = new ArrayList<>(films.size());
+        for (Film film : films) {
+            tokenized.add(Map.entry(toFilmIndex(film.getId()), new Document(
+                    FilmSearchTokenizer.tokenize(film.getName()),
+                    FilmSearchTokenizer.tokenize(film.getDescription()))));
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (Map.Entry<Integer, Document> entry : tokenized) {
+                int filmId = entry.getKey();
+                Document previous = documents.put(filmId, entry.getValue());
+                if (previous != null) {
+                    previous.nameTerms().forEach(term -> removePosting(nameIndex, term, filmId));
+                    previous.descriptionTerms().forEach(term -> removePosting(descriptionIndex, term, filmId));
+                }
+                entry.getValue().nameTerms().forEach(term -> addPosting(nameIndex, term, filmId));
+                entry.getValue().descriptionTerms().forEach(term -> addPosting(descriptionIndex, term, filmId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void onLikeAdded(long filmId, long userId) {
+        likesByFilmId.merge(toFilmIndex(filmId), 1L, Long::sum);
+    }
+
+    @Override
+    public void onLikeRemoved(long filmId, long userId) {
+        likesByFilmId.computeIfPresent(toFilmIndex(filmId), (id, likes) -> Math.max(likes - 1L, 0L));
+    }
+
+    /**
+     * Не более limit ID фильмов, содержащих все термы запроса, по убыванию оценки.
+     */
+    public List<Long> search(String query, int limit) {
+        List<String> terms = FilmSearchTokenizer.tokenize(query);
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int[][] nameMatches = new int[terms.size()][];
+            int[][] allMatches = new int[terms.size()][];
+            for (int i = 0; i < terms.size(); i++) {
+                boolean prefix = (i == terms.size() - 1);
+                nameMatches[i] = postings(nameIndex, terms.get(i), prefix);
+                allMatches[i] = union(nameMatches[i], postings(descriptionIndex, terms.get(i), prefix));
+                if (allMatches[i].length == 0) {
+                    return List.of();
+                }
+            }
+
+            int[] candidates = Arrays.stream(allMatches)
+                    .sorted(Comparator.comparingInt(filmsIds -> filmsIds.length))
+                    .reduce(FilmSearchIndex::intersect)
+                    .orElse(NO_FILMS);
+
+            PriorityQueue<ScoredFilm> best = new PriorityQueue<>(Comparator.comparingDouble(ScoredFilm::score)
+                    .thenComparing(ScoredFilm::filmId, Comparator.reverseOrder()));
+            for (int filmId : candidates) {
+                double score = 0.0;
+                for (int i = 0; i < terms.size(); i++) {
+                    double idf = Math.log(1.0 + (double) documents.size() / allMatches[i].length);
+                    score += (Arrays.binarySearch(nameMatches[i], filmId) >= 0) ? nameWeight * idf : idf;
+                }
+                score *= 1.0 + likesWeight * Math.log1p(likesByFilmId.getOrDefault(filmId, 0L));
+                best.add(new ScoredFilm(filmId, score));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+
+            List<Long> filmsIds = new ArrayList<>(best.size());
+            while (!best.isEmpty()) {
+                filmsIds.add((long) best.poll().filmId());
+            }
+            Collections.reverse(filmsIds);
+            return filmsIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] postings(NavigableMap<String, int[]> index, String term, boolean prefix) {
+        if (!prefix || term.length() < minPrefixLength) {
+            return index.getOrDefault(term, NO_FILMS);
+        }
+        return unionAll(index.subMap(term, true, term + Character.MAX_VALUE, false).values());
+    }
+
+    private static void addPosting(Map<String, int[]> index, String term, int filmId) {
+        int[] filmsIds = index.getOrDefault(term, NO_FILMS);
+        int pos = Arrays.binarySearch(filmsIds, filmId);
+        if (pos >= 0) {
+            return;
+        }
+        int insertAt = -pos - 1;
+        int[] updated = new int[filmsIds.length + 1];
+        System.arraycopy(filmsIds, 0, updated, 0, insertAt);
+        updated[insertAt] = filmId;
+        System.arraycopy(filmsIds, insertAt, updated, insertAt + 1, filmsIds.length - insertAt);
+        index.put(term, updated);
+    }
+
+    private static void removePosting(Map<String, int[]> index, String term, int filmId) {
+        int[] filmsIds = index.getOrDefault(term, NO_FILMS);
+        int pos = Arrays.binarySearch(filmsIds, filmId);
+        if (pos < 0) {
+            return;
+        }
+        if (filmsIds.length == 1) {
+            index.remove(term);
+            return;
+        }
+        int[] updated = new int[filmsIds.length - 1];
+        System.arraycopy(filmsIds, 0, updated, 0, pos);
+        System.arraycopy(filmsIds, pos + 1, updated, pos, filmsIds.length - pos - 1);
+        index.put(term, updated);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                result[size++] = a[i++];
+            } else if (a[i] > b[j]) {
+                result[size++] = b[j++];
+            } else {
+                result[size++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) {
+            result[size++] = a[i++];
+        }
+        while (j < b.length) {
+            result[size++] = b[j++];
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Объединение многих списков за один проход сортировки, а не попарными слияниями,
+     * стоимость которых растет с числом списков.
+     */
+    private static int[] unionAll(Collection<int[]> postings) {
+        if (postings.isEmpty()) {
+            return NO_FILMS;
+        }
+        if (postings.size() == 1) {
+            return postings.iterator().next();
+        }
+        int[] all = new int[postings.stream().mapToInt(filmsIds -> filmsIds.length).sum()];
+        int offset = 0;
+        for (int[] filmsIds : postings) {
+            System.arraycopy(filmsIds, 0, all, offset, filmsIds.length);
+            offset += filmsIds.length;
+        }
+        Arrays.sort(all);
+        int size = 0;
+        for (int filmId : all) {
+            if (size == 0 || all[size - 1] != filmId) {
+                all[size++] = filmId;
+            }
+        }
+        return Arrays.copyOf(all, size);
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int[] toArray(List<Integer> filmsIds) {
+        return filmsIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int toFilmIndex(long filmId) {
+        return Math.toIntExact(filmId);
+    }
+
+    private record Document(List<String> nameTerms, List<String> descriptionTerms) {
+    }
+
+    private record ScoredFilm(int filmId, double score) {
+    }
+}
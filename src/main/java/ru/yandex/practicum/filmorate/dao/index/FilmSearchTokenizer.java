@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.dao.index;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Разбиение текста на термы для поиска: слова из букв и цифр в нижнем регистре, ё заменяется на е,
+ * у слов отбрасываются окончания - падежные для кириллицы и окончание множественного числа для латиницы.
+ */
+final class FilmSearchTokenizer {
+
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    private static final int MIN_STEM_LENGTH = 3;
+
+    // сначала более длинные окончания
+    private static final String[] RUSSIAN_ENDINGS = {
+            "иями", "ями", "ами", "ого", "его", "ому", "ему", "ыми", "ими",
+            "ой", "ей", "ий", "ый", "ая", "яя", "ое", "ее", "ые", "ие", "ых", "их", "ах", "ях",
+            "ов", "ев", "ом", "ем", "ам", "ям", "ую", "юю",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+
+    private FilmSearchTokenizer() {
+    }
+
+    /**
+     * Различные термы текста в порядке первого появления.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        Set<String> terms = new LinkedHashSet<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char ch = (i < text.length()) ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(ch)) {
+                token.append(normalize(ch));
+            } else if (!token.isEmpty()) {
+                if (token.length() >= MIN_TOKEN_LENGTH) {
+                    terms.add(stem(token.toString()));
+                }
+                token.setLength(0);
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    private static char normalize(char ch) {
+        char lower = Character.toLowerCase(ch);
+        return (lower == 'ё') ? 'е' : lower;
+    }
+
+    private static String stem(String token) {
+        if (isCyrillic(token.charAt(0))) {
+            for (String ending : RUSSIAN_ENDINGS) {
+                if (token.endsWith(ending) && token.length() - ending.length() >= MIN_STEM_LENGTH) {
+                    return token.substring(0, token.length() - ending.length());
+                }
+            }
+            return token;
+        }
+        if (token.length() > MIN_STEM_LENGTH && token.endsWith("s")
+                && !token.endsWith("ss") && !token.endsWith("us") && !token.endsWith("is")) {
+            return token.substring(0, token.length() - 1);
+        }
+        return token;
+    }
+
+    private static boolean isCyrillic(char ch) {
+        return Character.UnicodeBlock.of(ch) == Character.UnicodeBlock.CYRILLIC;
+    }
+}
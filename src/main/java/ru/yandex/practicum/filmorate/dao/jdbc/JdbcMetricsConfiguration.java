@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.dao.jdbc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.JdbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * Хранилища получают JdbcOperations, поэтому обертка с метриками объявлена основным бином этого типа,
+ * а JdbcTemplate под ней создается так же, как в автоконфигурации Spring Boot, которая при наличии
+ * собственного JdbcOperations отключается. Метрики доступны через /actuator/metrics/filmorate.jdbc.query.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "filmorate.jdbc.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class JdbcMetricsConfiguration {
+
+    @Bean
+    public JdbcTemplate jdbcTemplate(DataSource dataSource, JdbcProperties properties) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        JdbcProperties.Template template = properties.getTemplate();
+        jdbcTemplate.setFetchSize(template.getFetchSize());
+        jdbcTemplate.setMaxRows(template.getMaxRows());
+        if (template.getQueryTimeout() != null) {
+            jdbcTemplate.setQueryTimeout((int) template.getQueryTimeout().getSeconds());
+        }
+        return jdbcTemplate;
+    }
+
+    @Bean
+    @Primary
+    public JdbcOperations instrumentedJdbcOperations(
+            JdbcTemplate jdbcTemplate,
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${filmorate.jdbc.metrics.percentile-histogram:true}") boolean percentileHistogram,
+            @Value("${filmorate.jdbc.metrics.max-queries:500}") int maxQueries) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return jdbcTemplate;
+        }
+        return JdbcQueryMetrics.wrap(jdbcTemplate, registry, percentileHistogram, maxQueries);
+    }
+}
@@ -0,0 +1,222 @@
+package ru.yandex.practicum.filmorate.dao.jdbc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlProvider;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Обертка над JdbcOperations, которая снимает метрики каждого запроса под явным именем из блочного комментария
+ * в начале SQL, например film.addLikes. Имя задается рядом с текстом запроса: класс-владелец без суффикса
+ * DbStorage, публичный метод и, если в методе несколько запросов, шаг. Поэтому имя не зависит от порядка вызовов,
+ * а одинаковый SQL из разных методов (addLike и addLikes) учитывается раздельно. SQL без имени и колбэки без SQL
+ * (лямбды вместо SqlProvider) учитываются под именем other. Метрики создаются при первом выполнении SQL
+ * и дальше берутся из ConcurrentHashMap, поэтому на горячем пути остаются поиск в map,
+ * два вызова System.nanoTime() и запись в уже зарегистрированные метрики:
+ * filmorate.jdbc.query - время выполнения (гистограмма), filmorate.jdbc.rows - прочитанные или измененные строки,
+ * filmorate.jdbc.batch.size - размер пакета, filmorate.jdbc.errors - ошибки с тегом exception.
+ * Для queryForStream время измеряется только до открытия потока.
+ */
+public final class JdbcQueryMetrics implements InvocationHandler {
+
+    private static final String OTHER_QUERY = "other";
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("^\\s*/\\*\\s*([A-Za-z][A-Za-z0-9_.]*)\\s*\\*/");
+
+    private final JdbcOperations target;
+
+    private final MeterRegistry registry;
+
+    private final boolean percentileHistogram;
+
+    private final int maxQueries;
+
+    private final Map<Object, QueryMeters> metersByQuery = new ConcurrentHashMap<>();
+
+    private final Map<String, QueryMeters> metersByName = new ConcurrentHashMap<>();
+
+    private JdbcQueryMetrics(JdbcOperations target, MeterRegistry registry, boolean percentileHistogram,
+                             int maxQueries) {
+        this.target = target;
+        this.registry = registry;
+        this.percentileHistogram = percentileHistogram;
+        this.maxQueries = maxQueries;
+    }
+
+    /**
+     * Количество различных SQL ограничено maxQueries: запросы сверх лимита учитываются под именем other,
+     * чтобы динамически собранный SQL не порождал неограниченное число метрик.
+     */
+    public static JdbcOperations wrap(JdbcOperations target, MeterRegistry registry, boolean percentileHistogram,
+                                      int maxQueries) {
+        return (JdbcOperations) Proxy.newProxyInstance(JdbcOperations.class.getClassLoader(),
+                new Class<?>[]{JdbcOperations.class},
+                new JdbcQueryMetrics(target, registry, percentileHistogram, maxQueries));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return (method.getName().equals("equals")) ? proxy == args[0] : invokeTarget(method, args);
+        }
+
+        QueryMeters meters = meters(args);
+        long[] handledRows = null;
+        if (args != null) {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] instanceof RowCallbackHandler handler) {
+                    long[] counter = new long[1];
+                    handledRows = counter;
+                    args[i] = (RowCallbackHandler) rs -> {
+                        counter[0]++;
+                        handler.processRow(rs);
+                    };
+                }
+            }
+        }
+
+        long startedAt = System.nanoTime();
+        Object result;
+        try {
+            result = invokeTarget(method, args);
+        } catch (EmptyResultDataAccessException e) {
+            // queryForObject без строк - обычный "не найдено" в хранилищах, а не ошибка запроса
+            meters.timer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            meters.rows.record(0);
+            throw e;
+        } catch (Throwable e) {
+            meters.timer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+            Counter.builder("filmorate.jdbc.errors")
+                    .tag("query", meters.name)
+                    .tag("exception", e.getClass().getSimpleName())
+                    .register(registry)
+                    .increment();
+            throw e;
+        }
+        meters.timer.record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+
+        if (handledRows != null) {
+            meters.rows.record(handledRows[0]);
+        } else if (result instanceof Collection<?> rows) {
+            meters.rows.record(rows.size());
+        } else if (result instanceof int[] batchRows) {
+            meters.batchSize.record(batchRows.length);
+            meters.rows.record(sumOfUpdatedRows(batchRows));
+        } else if (result instanceof int[][] batches) {
+            long updatedRows = 0;
+            for (int[] batchRows : batches) {
+                meters.batchSize.record(batchRows.length);
+                updatedRows += sumOfUpdatedRows(batchRows);
+            }
+            meters.rows.record(updatedRows);
+        } else if (result instanceof Integer updatedRows && method.getName().equals("update")) {
+            meters.rows.record(updatedRows);
+        } else if (result != null && method.getName().startsWith("queryFor")
+                && !method.getName().equals("queryForStream") && !method.getName().equals("queryForRowSet")) {
+            meters.rows.record(1);
+        }
+        return result;
+    }
+
+    private Object invokeTarget(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private QueryMeters meters(Object[] args) {
+        Object key = queryKey(args);
+        QueryMeters meters = metersByQuery.get(key);
+        if (meters != null) {
+            return meters;
+        }
+        if (metersByQuery.size() >= maxQueries) {
+            return metersByName.computeIfAbsent(OTHER_QUERY, QueryMeters::new);
+        }
+        return metersByQuery.computeIfAbsent(key,
+                query -> metersByName.computeIfAbsent(queryName(query), QueryMeters::new));
+    }
+
+    /**
+     * Ключ запроса - текст SQL вместе с комментарием-именем, а для колбэков без SQL - класс лямбды.
+     */
+    private static Object queryKey(Object[] args) {
+        if (args == null || args.length == 0) {
+            return OTHER_QUERY;
+        }
+        Object first = args[0];
+        if (first instanceof String sql) {
+            return sql;
+        }
+        if (first instanceof String[] sql && sql.length > 0) {
+            return sql[0];
+        }
+        if (first instanceof SqlProvider provider && provider.getSql() != null) {
+            return provider.getSql();
+        }
+        return first.getClass();
+    }
+
+    private static String queryName(Object key) {
+        if (key instanceof String sql) {
+            Matcher matcher = NAME_PATTERN.matcher(sql);
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+        }
+        return OTHER_QUERY;
+    }
+
+    private static long sumOfUpdatedRows(int[] batchRows) {
+        long updatedRows = 0;
+        for (int rows : batchRows) {
+            // Statement.SUCCESS_NO_INFO и другие отрицательные коды не учитываются
+            if (rows > 0) {
+                updatedRows += rows;
+            }
+        }
+        return updatedRows;
+    }
+
+    private final class QueryMeters {
+
+        private final String name;
+
+        private final Timer timer;
+
+        private final DistributionSummary rows;
+
+        private final DistributionSummary batchSize;
+
+        QueryMeters(String name) {
+            this.name = name;
+            this.timer = Timer.builder("filmorate.jdbc.query")
+                    .tag("query", name)
+                    .publishPercentileHistogram(percentileHistogram)
+                    .register(registry);
+            this.rows = DistributionSummary.builder("filmorate.jdbc.rows")
+                    .tag("query", name)
+                    .register(registry);
+            this.batchSize = DistributionSummary.builder("filmorate.jdbc.batch.size")
+                    .tag("query", name)
+                    .register(registry);
+        }
+    }
+}
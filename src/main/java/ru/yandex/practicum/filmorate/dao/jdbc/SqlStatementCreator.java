@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.dao.jdbc;
+
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.SqlProvider;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * PreparedStatementCreator, который сообщает свой SQL: в отличие от лямбды, по нему JdbcQueryMetrics
+ * находит имя запроса, а Spring добавляет SQL в текст исключений.
+ */
+public record SqlStatementCreator(String sql, StatementPreparer preparer)
+        implements PreparedStatementCreator, SqlProvider {
+
+    @Override
+    public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+        return preparer.prepare(connection, sql);
+    }
+
+    @Override
+    public String getSql() {
+        return sql;
+    }
+
+    @FunctionalInterface
+    public interface StatementPreparer {
+
+        PreparedStatement prepare(Connection connection, String sql) throws SQLException;
+    }
+}
@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.dao.mappers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.reference.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Сборка объектов Film за один проход по результату запроса фильмов с рейтингом и жанрами.
+ * Запрос должен возвращать столбцы в порядке: f.id, f.name, f.description, f.release_date, f.duration,
+ * f.mpa_rating_id, fg.genre_id, а строки одного фильма - подряд.
+ * Если жанры уже загружены отдельным запросом, запрос возвращает только первые шесть столбцов,
+ * а жанры берутся из переданной Map.
+ * Каждый объект Film создается ровно один раз, столбцы читаются по индексу.
+ * Названия жанров и рейтингов не читаются из БД - используются общие экземпляры из ReferenceDataRegistry.
+ */
+@Component
+public class FilmHydrator implements ResultSetExtractor<List<Film>> {
+
+    private static final int ID = 1;
+    private static final int NAME = 2;
+    private static final int DESCRIPTION = 3;
+    private static final int RELEASE_DATE = 4;
+    private static final int DURATION = 5;
+    private static final int MPA_RATING_ID = 6;
+    private static final int GENRE_ID = 7;
+
+    private static final SequencedSet<Genre> NO_GENRES = Collections.unmodifiableSequencedSet(new LinkedHashSet<>());
+
+    private static final Rating NO_RATING = new Rating(null, null);
+
+    private final ReferenceDataRegistry registry;
+
+    @Autowired
+    public FilmHydrator(ReferenceDataRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public List<Film> extractData(ResultSet rs) throws SQLException {
+        List<Film> films = new ArrayList<>();
+        forEachFilm(rs, films::add);
+        return films;
+    }
+
+    public void forEachFilm(ResultSet rs, Consumer<Film> consumer) throws SQLException {
+        boolean hasRow = rs.next();
+        while (hasRow) {
+            long filmId = rs.getLong(ID);
+            String name = rs.getString(NAME);
+            String description = rs.getString(DESCRIPTION);
+            Date releaseDate = rs.getDate(RELEASE_DATE);
+            int duration = rs.getInt(DURATION);
+            int mpaRatingId = rs.getInt(MPA_RATING_ID);
+
+            SequencedSet<Genre> genres = null;
+            do {
+                int genreId = rs.getInt(GENRE_ID);
+                if (genreId != 0) {
+                    if (genres == null) {
+                        genres = new LinkedHashSet<>();
+                    }
+                    genres.add(getGenre(genreId));
+                }
+                hasRow = rs.next();
+            } while (hasRow && rs.getLong(ID) == filmId);
+
+            consumer.accept(buildFilm(filmId, name, description, releaseDate, duration, mpaRatingId,
+                    (genres == null) ? NO_GENRES : Collections.unmodifiableSequencedSet(genres)));
+        }
+    }
+
+    public void forEachFilm(ResultSet rs, Map<Long, SequencedSet<Genre>> genresByFilmId,
+                            Consumer<Film> consumer) throws SQLException {
+        while (rs.next()) {
+            long filmId = rs.getLong(ID);
+            SequencedSet<Genre> genres = genresByFilmId.get(filmId);
+            consumer.accept(buildFilm(
+                    filmId,
+                    rs.getString(NAME),
+                    rs.getString(DESCRIPTION),
+                    rs.getDate(RELEASE_DATE),
+                    rs.getInt(DURATION),
+                    rs.getInt(MPA_RATING_ID),
+                    (genres == null) ? NO_GENRES : Collections.unmodifiableSequencedSet(genres)
+            ));
+        }
+    }
+
+    private Film buildFilm(long filmId, String name, String description, Date releaseDate, int duration,
+                           int mpaRatingId, SequencedSet<Genre> genres) {
+        return new Film(
+                filmId,
+                name,
+                description,
+                (releaseDate == null) ? null : releaseDate.toLocalDate(),
+                duration,
+                genres,
+                getRating(mpaRatingId)
+        );
+    }
+
+    public Genre getGenre(int genreId) {
+        Genre genre = registry.findGenre(genreId);
+        return (genre == null) ? new Genre(genreId, null) : genre;
+    }
+
+    private Rating getRating(int mpaRatingId) {
+        if (mpaRatingId == 0) {
+            return NO_RATING;
+        }
+        Rating rating = registry.findRating(mpaRatingId);
+        return (rating == null) ? new Rating(mpaRatingId, null) : rating;
+    }
+}
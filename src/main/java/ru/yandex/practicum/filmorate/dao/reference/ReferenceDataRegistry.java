@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.dao.reference;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+
+import java.util.List;
+
+/**
+ * Неизменяемый справочник жанров и MPA рейтингов, загружаемый из БД один раз при старте приложения.
+ * Объекты Genre и Rating создаются в единственном экземпляре и хранятся в массивах по ID,
+ * поэтому поиск по ID - чтение из массива без выделения памяти.
+ */
+@Slf4j
+@Component
+public class ReferenceDataRegistry {
+
+    private final List<Genre> genres;
+
+    private final Genre[] genresById;
+
+    private final List<Rating> ratings;
+
+    private final Rating[] ratingsById;
+
+    @Autowired
+    public ReferenceDataRegistry(JdbcOperations jdbc, RowMapper<Genre> genreMapper, RowMapper<Rating> ratingMapper) {
+        final String FIND_ALL_GENRES_QUERY = """
+                /* referenceDataRegistry.genres */
+                SELECT *
+                FROM genres
+                ORDER BY genre_id;
+                """;
+        final String FIND_ALL_RATINGS_QUERY = """
+                /* referenceDataRegistry.ratings */
+                SELECT *
+                FROM mpa_rating
+                ORDER BY mpa_rating_id;
+                """;
+
+        this.genres = List.copyOf(jdbc.query(FIND_ALL_GENRES_QUERY, genreMapper));
+        this.ratings = List.copyOf(jdbc.query(FIND_ALL_RATINGS_QUERY, ratingMapper));
+
+        int maxGenreId = genres.stream().mapToInt(Genre::getId).max().orElse(0);
+        this.genresById = new Genre[maxGenreId + 1];
+        for (Genre genre : genres) {
+            genresById[genre.getId()] = genre;
+        }
+
+        int maxRatingId = ratings.stream().mapToInt(Rating::getId).max().orElse(0);
+        this.ratingsById = new Rating[maxRatingId + 1];
+        for (Rating rating : ratings) {
+            ratingsById[rating.getId()] = rating;
+        }
+        log.info("ReferenceDataRegistry: Загружено жанров: {}, рейтингов: {}", genres.size(), ratings.size());
+    }
+
+    public List<Genre> getAllGenres() {
+        return genres;
+    }
+
+    public List<Rating> getAllRatings() {
+        return ratings;
+    }
+
+    /**
+     * Возвращает жанр по ID либо null, если жанр не найден.
+     */
+    public Genre findGenre(int id) {
+        if (id < 0 || id >= genresById.length) {
+            return null;
+        }
+        return genresById[id];
+    }
+
+    /**
+     * Возвращает рейтинг по ID либо null, если рейтинг не найден.
+     */
+    public Rating findRating(int id) {
+        if (id < 0 || id >= ratingsById.length) {
+            return null;
+        }
+        return ratingsById[id];
+    }
+}
@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.dao.repositories;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Кэширующая обертка над FilmDbStorage для чтения фильма по ID.
+ * Размер кэша ограничен количеством записей и временем жизни, вытеснение - W-TinyLFU (Caffeine).
+ * Запись удаляется из кэша при обновлении фильма. Счетчики попаданий, промахов и вытеснений
+ * доступны через getCacheStats() и метрики cache.* с тегом cache=films.
+ */
+@Primary
+@Component
+@ConditionalOnProperty(name = "filmorate.films.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class CachingFilmStorage implements FilmStorage {
+
+    private final FilmDbStorage filmDbStorage;
+
+    private final Cache<Long, Film> filmsById;
+
+    @Autowired
+    public CachingFilmStorage(FilmDbStorage filmDbStorage,
+                              ObjectProvider<MeterRegistry> meterRegistry,
+                              @Value("${filmorate.films.cache.maximum-size:10000}") long maximumSize,
+                              @Value("${filmorate.films.cache.expire-after-write-seconds:600}") long expireAfterWrite) {
+        this.filmDbStorage = filmDbStorage;
+        this.filmsById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWrite))
+                .recordStats()
+                .build();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, filmsById, "films"));
+    }
+
+    public CacheStats getCacheStats() {
+        return filmsById.stats();
+    }
+
+    @Override
+    public List<Film> getAllFilms() {
+        return filmDbStorage.getAllFilms();
+    }
+
+    @Override
+    public List<Film> getFilmsPage(Long afterId, int limit) {
+        return filmDbStorage.getFilmsPage(afterId, limit);
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> consumer) {
+        filmDbStorage.streamAllFilms(consumer);
+    }
+
+    @Override
+    public Film getFilmById(Long filmId) {
+        return filmsById.get(filmId, filmDbStorage::getFilmById);
+    }
+
+    @Override
+    public List<Film> getFilmsByIds(List<Long> filmsIds) {
+        return filmDbStorage.getFilmsByIds(filmsIds);
+    }
+
+    @Override
+    public Set<Long> getExistingFilmsIds(Collection<Long> filmsIds) {
+        return filmDbStorage.getExistingFilmsIds(filmsIds);
+    }
+
+    @Override
+    public Film create(Film film) {
+        return filmDbStorage.create(film);
+    }
+
+    @Override
+    public List<Film> createAll(List<Film> films) {
+        return filmDbStorage.createAll(films);
+    }
+
+    @Override
+    public Film update(Film film) {
+        try {
+            return filmDbStorage.update(film);
+        } finally {
+            filmsById.invalidate(film.getId());
+        }
+    }
+
+    @Override
+    public void addLike(Long filmId, Long userId) {
+        filmDbStorage.addLike(filmId, userId);
+    }
+
+    @Override
+    public void removeLike(Long filmId, Long userId) {
+        filmDbStorage.removeLike(filmId, userId);
+    }
+
+    @Override
+    public boolean[] addLikes(List<FilmLike> likes) {
+        return filmDbStorage.addLikes(likes);
+    }
+
+    @Override
+    public boolean[] removeLikes(List<FilmLike> likes) {
+        return filmDbStorage.removeLikes(likes);
+    }
+
+    @Override
+    public Set<FilmLike> getExistingLikes(Collection<FilmLike> likes) {
+        return filmDbStorage.getExistingLikes(likes);
+    }
+
+    @Override
+    public List<Film> getTopFilms(int limit) {
+        return filmDbStorage.getTopFilms(limit);
+    }
+
+    @Override
+    public List<Film> getTopFilms(int limit, Integer genreId, Integer year) {
+        return filmDbStorage.getTopFilms(limit, genreId, year);
+    }
+}
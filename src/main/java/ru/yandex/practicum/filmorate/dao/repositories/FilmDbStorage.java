@@ -1,23 +1,34 @@
 package ru.yandex.practicum.filmorate.dao.repositories;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.jdbc.core.*;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikeListener;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.jdbc.SqlStatementCreator;
+import ru.yandex.practicum.filmorate.dao.mappers.FilmHydrator;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Slf4j
 @Repository
@@ -25,86 +36,117 @@ public class FilmDbStorage implements FilmStorage {
 
     private final JdbcOperations jdbc;
 
-    private final RowMapper<Film> mapper;
+    private final FilmHydrator hydrator;
 
-    private final static String PROGRAM_LEVEL = "FilmDbStorage";
+    private final Optional<FilmPopularityIndex> popularityIndex;
+
+    private final ObjectProvider<FilmLikeListener> likeListeners;
+
+    private final int streamFetchSize;
+
+    private static final String PROGRAM_LEVEL = "FilmDbStorage";
 
     @Autowired
-    public FilmDbStorage(final JdbcOperations jdbc, final RowMapper<Film> mapper) {
+    public FilmDbStorage(final JdbcOperations jdbc, final FilmHydrator hydrator,
+                         final Optional<FilmPopularityIndex> popularityIndex,
+                         final ObjectProvider<FilmLikeListener> likeListeners,
+                         @Value("${filmorate.films.stream.fetch-size:500}") final int streamFetchSize) {
         this.jdbc = jdbc;
-        this.mapper = mapper;
+        this.hydrator = hydrator;
+        this.popularityIndex = popularityIndex;
+        this.likeListeners = likeListeners;
+        this.streamFetchSize = streamFetchSize;
     }
 
+    /**
+     * Весь каталог читается одним упорядоченным соединением с жанрами, которое FilmHydrator
+     * разбирает за один проход. Загрузка по списку ID остается для ограниченных списков.
+     */
     @Override
     public List<Film> getAllFilms() {
-        final String FIND_ALL_FILMS_WITH_MPA_RATING_QUERY = """
-                SELECT f.*, mr.name AS mpa_rating_name
+        final String FIND_ALL_FILMS_WITH_GENRES_QUERY = """
+                /* film.getAllFilms */
+                SELECT f.id, f.name, f.description, f.release_date, f.duration,
+                       f.mpa_rating_id, fg.genre_id
                 FROM films AS f
-                LEFT OUTER JOIN mpa_rating AS mr
-                ON f.mpa_rating_id = mr.mpa_rating_id
+                LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
+                ORDER BY f.id, fg.genre_id;
                 """;
-        final String FIND_ALL_FILMS_IDS_WITH_GENRES_QUERY = """
-                SELECT fg.film_id, fg.genre_id, g.name AS genre_name
-                FROM film_genre AS fg
-                LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id
+
+        return jdbc.query(FIND_ALL_FILMS_WITH_GENRES_QUERY, hydrator);
+    }
+
+    /**
+     * Последовательно передает все фильмы в consumer, не собирая их в список.
+     * Фильмы с жанрами читаются однонаправленным курсором, упорядоченным по ID фильма.
+     */
+    @Override
+    public void streamAllFilms(Consumer<Film> consumer) {
+        final String FIND_ALL_FILMS_WITH_GENRES_QUERY = """
+                /* film.streamAllFilms */
+                SELECT f.id, f.name, f.description, f.release_date, f.duration,
+                       f.mpa_rating_id, fg.genre_id
+                FROM films AS f
+                LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
+                ORDER BY f.id, fg.genre_id;
                 """;
 
-        List<Film> tmpFilms = jdbc.query(FIND_ALL_FILMS_WITH_MPA_RATING_QUERY, mapper);
-        if (tmpFilms == null || tmpFilms.isEmpty()) {
-            return List.of();
-        }
+        jdbc.query(new SqlStatementCreator(FIND_ALL_FILMS_WITH_GENRES_QUERY, (connection, sql) -> {
+            PreparedStatement preparedStatement = connection.prepareStatement(
+                    sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            preparedStatement.setFetchSize(streamFetchSize);
+            return preparedStatement;
+        }), (ResultSetExtractor<Void>) rs -> {
+            hydrator.forEachFilm(rs, consumer);
+            return null;
+        });
+    }
 
-        Map<Long, SequencedSet<Genre>> filmsGenres = jdbc.query(FIND_ALL_FILMS_IDS_WITH_GENRES_QUERY,
-                new FilmDbStorage.FilmsIdsWithGenresExtractor());
-
-        List<Film> films = new ArrayList<>();
-        for (Film tmpFilm : tmpFilms) {
-            if (filmsGenres.containsKey(tmpFilm.getId())) {
-                Film film = new Film(
-                        tmpFilm.getId(),
-                        tmpFilm.getName(),
-                        tmpFilm.getDescription(),
-                        tmpFilm.getReleaseDate(),
-                        tmpFilm.getDuration(),
-                        Collections.unmodifiableSequencedSet(filmsGenres.get(tmpFilm.getId())),
-                        tmpFilm.getMpa()
-                );
-                films.add(film);
-            } else {
-                films.add(tmpFilm);
-            }
-        }
-        return films;
+    @Override
+    public List<Film> getFilmsPage(Long afterId, int limit) {
+        final String FIND_FILMS_PAGE_IDS_QUERY = """
+                /* film.getFilmsPage */
+                SELECT id
+                FROM films
+                WHERE id > ?
+                ORDER BY id
+                LIMIT ?;
+                """;
+
+        return getFilmsByIds(jdbc.queryForList(FIND_FILMS_PAGE_IDS_QUERY, Long.class,
+                (afterId == null) ? 0L : afterId, limit));
     }
 
     @Override
     public Film getFilmById(Long id) {
-        final String FIND_FILM_BY_ID_WITH_MPA_AND_GENRES_QUERY = """
-                SELECT f.*, mr.name AS mpa_rating_name, fg.genre_id, g.name AS genre_name
+        final String FIND_FILM_BY_ID_WITH_GENRES_QUERY = """
+                /* film.getFilmById */
+                SELECT f.id, f.name, f.description, f.release_date, f.duration,
+                       f.mpa_rating_id, fg.genre_id
                 FROM films AS f
-                LEFT OUTER JOIN mpa_rating AS mr ON f.mpa_rating_id = mr.mpa_rating_id
                 LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
-                LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id
-                WHERE f.id = ?;
+                WHERE f.id = ?
+                ORDER BY fg.genre_id;
                 """;
 
-        Optional<Film> optionalFilm = jdbc.query(FIND_FILM_BY_ID_WITH_MPA_AND_GENRES_QUERY,
-                new FilmWithRatingAndGenresExtractor(), id);
+        List<Film> films = jdbc.query(FIND_FILM_BY_ID_WITH_GENRES_QUERY, hydrator, id);
 
-        if (optionalFilm.isEmpty()) {
+        if (films == null || films.isEmpty()) {
             log.warn(PROGRAM_LEVEL + ": Не удалось получить объект Film по его ID - не найден в приложении");
             throw new NotFoundException("FilmDbStorage: Фильм c ID: " + id + " не найден");
         }
-        return optionalFilm.get();
+        return films.getFirst();
     }
 
     @Override
     public Film create(Film film) {
         final String INSERT_FILM_QUERY = """
+                /* film.create */
                 INSERT INTO films (name, description, release_date, duration, mpa_rating_id)
                 VALUES (?, ?, ?, ?, ?);
                 """;
         final String INSERT_FILM_ID_GENRES_IDS_QUERY = """
+                /* film.create.genres */
                 INSERT INTO film_genre (film_id, genre_id)
                 VALUES (?, ?);
                 """;
@@ -118,14 +160,14 @@ public class FilmDbStorage implements FilmStorage {
         };
 
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbc.update(connection -> {
+        jdbc.update(new SqlStatementCreator(INSERT_FILM_QUERY, (connection, sql) -> {
             PreparedStatement preparedStatement = connection
-                    .prepareStatement(INSERT_FILM_QUERY, Statement.RETURN_GENERATED_KEYS);
+                    .prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             for (int idx = 0; idx < params.length; idx++) {
                 preparedStatement.setObject(idx + 1, params[idx]);
             }
             return preparedStatement;
-        }, keyHolder);
+        }), keyHolder);
         Long generatedId = keyHolder.getKeyAs(Long.class);
         if (generatedId == null) {
             throw new InternalServerException(PROGRAM_LEVEL + ": Не удалось сохранить данные Film");
@@ -150,6 +192,8 @@ public class FilmDbStorage implements FilmStorage {
                         }
                     });
         }
+        afterCommit(() -> popularityIndex.ifPresent(index ->
+                index.putFilm(generatedId, film.getReleaseDate(), genresIds(film))));
         return new Film(
                 generatedId,
                 film.getName(),
@@ -161,18 +205,103 @@ public class FilmDbStorage implements FilmStorage {
         );
     }
 
+    /**
+     * Сохранение списка фильмов в одной транзакции: все строки films вставляются одним пакетом
+     * с возвратом сгенерированных ключей, все строки film_genre - вторым пакетом.
+     */
+    @Override
+    @Transactional
+    public List<Film> createAll(List<Film> films) {
+        final String INSERT_FILM_QUERY = """
+                /* film.createAll */
+                INSERT INTO films (name, description, release_date, duration, mpa_rating_id)
+                VALUES (?, ?, ?, ?, ?);
+                """;
+        final String INSERT_FILM_ID_GENRES_IDS_QUERY = """
+                /* film.createAll.genres */
+                INSERT INTO film_genre (film_id, genre_id)
+                VALUES (?, ?);
+                """;
+
+        if (films.isEmpty()) {
+            return List.of();
+        }
+
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbc.batchUpdate(connection -> connection.prepareStatement(INSERT_FILM_QUERY, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Film film = films.get(i);
+                        ps.setString(1, film.getName());
+                        ps.setString(2, film.getDescription());
+                        ps.setObject(3, film.getReleaseDate());
+                        ps.setInt(4, film.getDuration());
+                        ps.setObject(5, film.getMpa().getId());
+                    }
+
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != films.size()) {
+            throw new InternalServerException(PROGRAM_LEVEL + ": Не удалось сохранить данные списка Film");
+        }
+
+        List<Film> createdFilms = new ArrayList<>(films.size());
+        List<long[]> filmsGenresIds = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            long generatedId = ((Number) keys.get(i).values().iterator().next()).longValue();
+            for (Genre genre : film.getGenres()) {
+                filmsGenresIds.add(new long[]{generatedId, genre.getId()});
+            }
+            createdFilms.add(new Film(
+                    generatedId,
+                    film.getName(),
+                    film.getDescription(),
+                    film.getReleaseDate(),
+                    film.getDuration(),
+                    film.getGenres(),
+                    film.getMpa()
+            ));
+        }
+
+        if (!filmsGenresIds.isEmpty()) {
+            jdbc.batchUpdate(INSERT_FILM_ID_GENRES_IDS_QUERY,
+                    new BatchPreparedStatementSetter() {
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            long[] filmGenreIds = filmsGenresIds.get(i);
+                            ps.setLong(1, filmGenreIds[0]);
+                            ps.setInt(2, (int) filmGenreIds[1]);
+                        }
+
+                        public int getBatchSize() {
+                            return filmsGenresIds.size();
+                        }
+                    });
+        }
+        afterCommit(() -> popularityIndex.ifPresent(index -> createdFilms.forEach(film -> index.putFilm(film.getId(),
+                film.getReleaseDate(), genresIds(film)))));
+        return createdFilms;
+    }
+
     @Override
     public Film update(Film film) {
         final String UPDATE_FILM_QUERY = """
+                /* film.update */
                 UPDATE films
                 SET name = ?, description = ?, release_date = ?, duration = ?, mpa_rating_id = ?
                 WHERE id = ?;
                 """;
         final String DELETE_GENRES_QUERY = """
+                /* film.update.deleteGenres */
                 DELETE FROM film_genre
                 WHERE film_id = ?;
                 """;
         final String INSERT_FILM_ID_GENRES_IDS_QUERY = """
+                /* film.update.insertGenres */
                 INSERT INTO film_genre (film_id, genre_id)
                 VALUES (?, ?);
                 """;
@@ -216,14 +345,31 @@ public class FilmDbStorage implements FilmStorage {
                         }
                     });
         }
+        afterCommit(() -> popularityIndex.ifPresent(index ->
+                index.putFilm(film.getId(), film.getReleaseDate(), genresIds(film))));
         return film;
     }
 
+    /**
+     * Добавление лайка одним запросом MERGE без предварительной проверки фильма и пользователя.
+     * Повторный лайк ничего не меняет. Существование фильма и пользователя проверяется
+     * только если вставка нарушила внешний ключ.
+     */
     @Override
+    @Transactional
     public void addLike(Long filmId, Long userId) {
-        final String INSERT_FILM_LIKE_QUERY = """
-                INSERT INTO film_like (film_id, user_id)
-                VALUES (?, ?);
+        final String MERGE_FILM_LIKE_QUERY = """
+                /* film.addLike */
+                MERGE INTO film_like AS fl
+                USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT))) AS l (film_id, user_id)
+                ON fl.film_id = l.film_id AND fl.user_id = l.user_id
+                WHEN NOT MATCHED THEN INSERT (film_id, user_id) VALUES (l.film_id, l.user_id);
+                """;
+        final String INCREMENT_FILM_LIKE_COUNT_QUERY = """
+                /* film.addLike.likeCount */
+                UPDATE films
+                SET like_count = like_count + 1
+                WHERE id = ?;
                 """;
 
         final Object[] params = {
@@ -231,137 +377,389 @@ public class FilmDbStorage implements FilmStorage {
                 userId
         };
 
-        jdbc.update(INSERT_FILM_LIKE_QUERY, params);
+        int insertedRows;
+        try {
+            insertedRows = jdbc.update(MERGE_FILM_LIKE_QUERY, params);
+        } catch (DataIntegrityViolationException e) {
+            checkLikeTargetsExist(filmId, userId);
+            throw e;
+        }
+        if (insertedRows == 0) {
+            log.info(PROGRAM_LEVEL + ": Лайк Film с ID: {} от User с ID: {} уже существует", filmId, userId);
+            return;
+        }
+        jdbc.update(INCREMENT_FILM_LIKE_COUNT_QUERY, filmId);
+        afterCommit(() -> {
+            popularityIndex.ifPresent(index -> index.incrementLikes(filmId));
+            likeListeners.forEach(listener -> listener.onLikeAdded(filmId, userId));
+        });
     }
 
     @Override
+    @Transactional
     public void removeLike(Long filmId, Long userId) {
         final String DELETE_FILM_LIKE_QUERY = """
+                /* film.removeLike */
                 DELETE FROM film_like
                 WHERE film_id = ? AND user_id = ?;
                 """;
+        final String DECREMENT_FILM_LIKE_COUNT_QUERY = """
+                /* film.removeLike.likeCount */
+                UPDATE films
+                SET like_count = like_count - 1
+                WHERE id = ? AND like_count > 0;
+                """;
 
         int rowsDeleted = jdbc.update(DELETE_FILM_LIKE_QUERY, filmId, userId);
         if (rowsDeleted == 0) {
+            checkLikeTargetsExist(filmId, userId);
             log.info(PROGRAM_LEVEL + ": Не удалось удалить like у Film с ID: {}", filmId);
+        } else {
+            jdbc.update(DECREMENT_FILM_LIKE_COUNT_QUERY, filmId);
+            afterCommit(() -> {
+                popularityIndex.ifPresent(index -> index.decrementLikes(filmId));
+                likeListeners.forEach(listener -> listener.onLikeRemoved(filmId, userId));
+            });
         }
     }
 
+    /**
+     * Пакетное добавление лайков через MERGE: существующий лайк не изменяется и не вызывает ошибку.
+     * Возвращает для каждого лайка признак того, что строка была вставлена.
+     * Счетчик like_count увеличивается одним пакетом на количество вставленных строк каждого фильма.
+     */
     @Override
-    public List<Film> getTopFilms(int limit) {
-        final String FIND_FILMS_WITH_MPA_RATING_SORTED_BY_LIKES_LIMITED_QUERY = """
-                SELECT f.*, mr.name AS mpa_rating_name
-                FROM films AS f
-                LEFT OUTER JOIN mpa_rating AS mr ON f.mpa_rating_id = mr.mpa_rating_id
-                LEFT OUTER JOIN film_like AS fl ON f.id = fl.film_id
-                GROUP BY f.id
-                ORDER BY COUNT(fl.user_id) DESC
-                LIMIT ?;
+    @Transactional
+    public boolean[] addLikes(List<FilmLike> likes) {
+        final String MERGE_FILM_LIKE_QUERY = """
+                /* film.addLikes */
+                MERGE INTO film_like AS fl
+                USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT))) AS l (film_id, user_id)
+                ON fl.film_id = l.film_id AND fl.user_id = l.user_id
+                WHEN NOT MATCHED THEN INSERT (film_id, user_id) VALUES (l.film_id, l.user_id);
                 """;
-        final String FIND_FILMS_IDS_WITH_GENRES_SORTED_BY_LIKES_LIMITED_QUERY = """
-                SELECT f.id AS film_id, fg.genre_id, g.name AS genre_name
-                FROM films AS f
-                LEFT OUTER JOIN film_like AS fl ON f.id = fl.film_id
-                LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
-                LEFT OUTER JOIN genres AS g ON fg.genre_id = g.genre_id
-                GROUP BY f.id, fg.genre_id
-                ORDER BY COUNT(fl.user_id) DESC, f.id
-                LIMIT ?;
+        final String ADD_FILM_LIKE_COUNT_QUERY = """
+                /* film.addLikes.likeCount */
+                UPDATE films
+                SET like_count = like_count + ?
+                WHERE id = ?;
                 """;
 
-        List<Film> sortFilms = jdbc.query(FIND_FILMS_WITH_MPA_RATING_SORTED_BY_LIKES_LIMITED_QUERY, mapper, limit);
-        if (sortFilms == null || sortFilms.isEmpty()) {
-            return List.of();
+        boolean[] created = new boolean[likes.size()];
+        if (likes.isEmpty()) {
+            return created;
         }
 
-        Map<Long, SequencedSet<Genre>> filmsGenres = jdbc.query(FIND_FILMS_IDS_WITH_GENRES_SORTED_BY_LIKES_LIMITED_QUERY,
-                new FilmDbStorage.FilmsIdsWithGenresExtractor(), limit);
-
-        List<Film> films = new ArrayList<>();
-        for (Film sortFilm : sortFilms) {
-            Film film = new Film(
-                    sortFilm.getId(),
-                    sortFilm.getName(),
-                    sortFilm.getDescription(),
-                    sortFilm.getReleaseDate(),
-                    sortFilm.getDuration(),
-                    Collections.unmodifiableSequencedSet(filmsGenres.get(sortFilm.getId())),
-                    sortFilm.getMpa()
-            );
-            films.add(film);
+        int[] mergedRows = jdbc.batchUpdate(MERGE_FILM_LIKE_QUERY,
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        FilmLike like = likes.get(i);
+                        ps.setLong(1, like.filmId());
+                        ps.setLong(2, like.userId());
+                    }
+
+                    public int getBatchSize() {
+                        return likes.size();
+                    }
+                });
+
+        Map<Long, Long> createdLikesByFilmId = new HashMap<>();
+        for (int i = 0; i < mergedRows.length; i++) {
+            if (mergedRows[i] > 0) {
+                created[i] = true;
+                createdLikesByFilmId.merge(likes.get(i).filmId(), 1L, Long::sum);
+            }
         }
-        return films;
+        if (createdLikesByFilmId.isEmpty()) {
+            return created;
+        }
+
+        List<Object[]> likeCountParams = new ArrayList<>(createdLikesByFilmId.size());
+        createdLikesByFilmId.forEach((filmId, count) -> likeCountParams.add(new Object[]{count, filmId}));
+        jdbc.batchUpdate(ADD_FILM_LIKE_COUNT_QUERY, likeCountParams);
+        afterCommit(() -> {
+            popularityIndex.ifPresent(index -> createdLikesByFilmId.forEach(index::addLikes));
+            for (int i = 0; i < created.length; i++) {
+                if (created[i]) {
+                    FilmLike like = likes.get(i);
+                    likeListeners.forEach(listener -> listener.onLikeAdded(like.filmId(), like.userId()));
+                }
+            }
+        });
+        return created;
     }
 
-    private static class FilmWithRatingAndGenresExtractor implements ResultSetExtractor<Optional<Film>> {
-        @Override
-        public Optional<Film> extractData(ResultSet rs) throws SQLException, DataAccessException {
-            Film tmpFilm = null;
-            SequencedSet<Genre> genres = new LinkedHashSet<>();
-            while (rs.next()) {
-                if (tmpFilm == null) {
-
-                    Integer ratingId = rs.getInt("mpa_rating_id");
-                    if (ratingId == 0) {
-                        ratingId = null;
+    /**
+     * Пакетное удаление лайков. Отсутствующий лайк не вызывает ошибку.
+     * Возвращает для каждого лайка признак того, что строка была удалена.
+     */
+    @Override
+    @Transactional
+    public boolean[] removeLikes(List<FilmLike> likes) {
+        final String DELETE_FILM_LIKE_QUERY = """
+                /* film.removeLikes */
+                DELETE FROM film_like
+                WHERE film_id = ? AND user_id = ?;
+                """;
+        final String SUBTRACT_FILM_LIKE_COUNT_QUERY = """
+                /* film.removeLikes.likeCount */
+                UPDATE films
+                SET like_count = GREATEST(like_count - ?, 0)
+                WHERE id = ?;
+                """;
+
+        boolean[] deleted = new boolean[likes.size()];
+        if (likes.isEmpty()) {
+            return deleted;
+        }
+
+        int[] deletedRows = jdbc.batchUpdate(DELETE_FILM_LIKE_QUERY,
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        FilmLike like = likes.get(i);
+                        ps.setLong(1, like.filmId());
+                        ps.setLong(2, like.userId());
                     }
-                    Rating mpa = new Rating(
-                            ratingId,
-                            rs.getString("mpa_rating_name")
-                    );
-
-                    tmpFilm = new Film(
-                            rs.getLong("id"),
-                            rs.getString("name"),
-                            rs.getString("description"),
-                            rs.getDate("release_date").toLocalDate(),
-                            rs.getInt("duration"),
-                            Collections.unmodifiableSequencedSet(new LinkedHashSet<>()),
-                            mpa
-                    );
-                }
 
-                int genreId = rs.getInt("genre_id");
-                String genreName = rs.getString("genre_name");
-                if (genreId != 0) {
-                    Genre genre = new Genre(genreId, genreName);
-                    genres.add(genre);
+                    public int getBatchSize() {
+                        return likes.size();
+                    }
+                });
+
+        Map<Long, Long> deletedLikesByFilmId = new HashMap<>();
+        for (int i = 0; i < deletedRows.length; i++) {
+            if (deletedRows[i] > 0) {
+                deleted[i] = true;
+                deletedLikesByFilmId.merge(likes.get(i).filmId(), 1L, Long::sum);
+            }
+        }
+        if (deletedLikesByFilmId.isEmpty()) {
+            return deleted;
+        }
+
+        List<Object[]> likeCountParams = new ArrayList<>(deletedLikesByFilmId.size());
+        deletedLikesByFilmId.forEach((filmId, count) -> likeCountParams.add(new Object[]{count, filmId}));
+        jdbc.batchUpdate(SUBTRACT_FILM_LIKE_COUNT_QUERY, likeCountParams);
+        afterCommit(() -> {
+            popularityIndex.ifPresent(index -> deletedLikesByFilmId.forEach(index::removeLikes));
+            for (int i = 0; i < deleted.length; i++) {
+                if (deleted[i]) {
+                    FilmLike like = likes.get(i);
+                    likeListeners.forEach(listener -> listener.onLikeRemoved(like.filmId(), like.userId()));
                 }
             }
+        });
+        return deleted;
+    }
 
-            if ((tmpFilm != null) && (!genres.isEmpty())) {
-                Film film = new Film(
-                        tmpFilm.getId(),
-                        tmpFilm.getName(),
-                        tmpFilm.getDescription(),
-                        tmpFilm.getReleaseDate(),
-                        tmpFilm.getDuration(),
-                        Collections.unmodifiableSequencedSet(genres),
-                        tmpFilm.getMpa()
-                );
-                return Optional.of(film);
+    /**
+     * Индексы в памяти и слушатели лайков обновляются только после фиксации транзакции,
+     * чтобы откат не оставлял в них лайки и фильмы, которых нет в базе. Вне транзакции - сразу.
+     */
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
             }
-            return Optional.ofNullable(tmpFilm);
+        });
+    }
+
+    @Override
+    public List<Film> getTopFilms(int limit) {
+        return getTopFilms(limit, null, null);
+    }
+
+    /**
+     * Топ фильмов по лайкам с необязательными фильтрами по жанру и году выпуска.
+     * Без индекса популярности выборка идет по индексам films.like_count, film_genre.genre_id
+     * и films.release_date.
+     */
+    @Override
+    public List<Film> getTopFilms(int limit, Integer genreId, Integer year) {
+        final String FIND_FILMS_IDS_SORTED_BY_LIKE_COUNT_LIMITED_QUERY = """
+                /* film.getTopFilms */
+                SELECT id
+                FROM films
+                ORDER BY like_count DESC, id
+                LIMIT ?;
+                """;
+        final String FIND_FILMS_IDS_BY_YEAR_SORTED_BY_LIKE_COUNT_LIMITED_QUERY = """
+                /* film.getTopFilms.byYear */
+                SELECT id
+                FROM films
+                WHERE release_date >= ? AND release_date < ?
+                ORDER BY like_count DESC, id
+                LIMIT ?;
+                """;
+        final String FIND_FILMS_IDS_BY_GENRE_SORTED_BY_LIKE_COUNT_LIMITED_QUERY = """
+                /* film.getTopFilms.byGenre */
+                SELECT f.id
+                FROM film_genre AS fg
+                JOIN films AS f ON f.id = fg.film_id
+                WHERE fg.genre_id = ?
+                ORDER BY f.like_count DESC, f.id
+                LIMIT ?;
+                """;
+        final String FIND_FILMS_IDS_BY_GENRE_AND_YEAR_SORTED_BY_LIKE_COUNT_LIMITED_QUERY = """
+                /* film.getTopFilms.byGenreAndYear */
+                SELECT f.id
+                FROM film_genre AS fg
+                JOIN films AS f ON f.id = fg.film_id
+                WHERE fg.genre_id = ? AND f.release_date >= ? AND f.release_date < ?
+                ORDER BY f.like_count DESC, f.id
+                LIMIT ?;
+                """;
+
+        List<Long> topFilmsIds;
+        if (popularityIndex.isPresent()) {
+            topFilmsIds = popularityIndex.get().getTopFilmsIds(limit, genreId, year);
+        } else if (genreId != null && year != null) {
+            topFilmsIds = jdbc.queryForList(FIND_FILMS_IDS_BY_GENRE_AND_YEAR_SORTED_BY_LIKE_COUNT_LIMITED_QUERY,
+                    Long.class, genreId, LocalDate.of(year, 1, 1), LocalDate.of(year + 1, 1, 1), limit);
+        } else if (genreId != null) {
+            topFilmsIds = jdbc.queryForList(FIND_FILMS_IDS_BY_GENRE_SORTED_BY_LIKE_COUNT_LIMITED_QUERY,
+                    Long.class, genreId, limit);
+        } else if (year != null) {
+            topFilmsIds = jdbc.queryForList(FIND_FILMS_IDS_BY_YEAR_SORTED_BY_LIKE_COUNT_LIMITED_QUERY,
+                    Long.class, LocalDate.of(year, 1, 1), LocalDate.of(year + 1, 1, 1), limit);
+        } else {
+            topFilmsIds = jdbc.queryForList(FIND_FILMS_IDS_SORTED_BY_LIKE_COUNT_LIMITED_QUERY, Long.class, limit);
         }
+        return getFilmsByIds(topFilmsIds);
     }
 
-    private static class FilmsIdsWithGenresExtractor implements ResultSetExtractor<Map<Long, SequencedSet<Genre>>> {
-        @Override
-        public Map<Long, SequencedSet<Genre>> extractData(ResultSet resultSet) throws SQLException, DataAccessException {
-            Map<Long, SequencedSet<Genre>> data = new HashMap<>();
-            Genre genre;
-            while (resultSet.next()) {
-                Long filmId = resultSet.getLong("film_id");
-                data.putIfAbsent(filmId, new LinkedHashSet<>());
-                //genre
-                int genreId = resultSet.getInt("genre_id");
-                String genreName = resultSet.getString("genre_name");
-                if (genreId != 0) {
-                    genre = new Genre(genreId, genreName);
-                    data.get(filmId).add(genre);
-                }
+    /**
+     * Загрузка фильмов по списку ID с сохранением порядка списка.
+     * Жанры загружаются отдельным запросом только для переданных ID, поэтому
+     * стоимость запроса зависит от размера результата, а не от размера каталога.
+     */
+    @Override
+    public List<Film> getFilmsByIds(List<Long> filmsIds) {
+        final String FIND_FILMS_BY_IDS_QUERY = """
+                /* film.getFilmsByIds */
+                SELECT f.id, f.name, f.description, f.release_date, f.duration, f.mpa_rating_id
+                FROM films AS f
+                WHERE f.id = ANY(?);
+                """;
+
+        if (filmsIds == null || filmsIds.isEmpty()) {
+            return List.of();
+        }
+        final Object[] params = {
+                filmsIds.toArray(new Long[0])
+        };
+
+        Map<Long, SequencedSet<Genre>> filmsGenres = loadGenres(params);
+        Map<Long, Film> filmsById = new HashMap<>();
+        jdbc.query(FIND_FILMS_BY_IDS_QUERY, (ResultSetExtractor<Void>) rs -> {
+            hydrator.forEachFilm(rs, filmsGenres, film -> filmsById.put(film.getId(), film));
+            return null;
+        }, params);
+
+        // сохраняем порядок переданных ID
+        List<Film> films = new ArrayList<>(filmsIds.size());
+        for (Long filmId : filmsIds) {
+            Film film = filmsById.get(filmId);
+            if (film != null) {
+                films.add(film);
             }
-            return data;
         }
+        return films;
+    }
+
+    @Override
+    public Set<Long> getExistingFilmsIds(Collection<Long> filmsIds) {
+        final String FIND_EXISTING_FILMS_IDS_QUERY = """
+                /* film.getExistingFilmsIds */
+                SELECT id
+                FROM films
+                WHERE id = ANY(?);
+                """;
+
+        if (filmsIds.isEmpty()) {
+            return Set.of();
+        }
+        final Object[] params = {
+                filmsIds.toArray(new Long[0])
+        };
+        return new HashSet<>(jdbc.queryForList(FIND_EXISTING_FILMS_IDS_QUERY, Long.class, params));
+    }
+
+    /**
+     * Лайки из переданных, которые уже есть в БД. Пары передаются двумя массивами и
+     * соединяются с film_like по первичному ключу.
+     */
+    @Override
+    public Set<FilmLike> getExistingLikes(Collection<FilmLike> likes) {
+        final String FIND_EXISTING_LIKES_QUERY = """
+                /* film.getExistingLikes */
+                SELECT fl.film_id, fl.user_id
+                FROM UNNEST(CAST(? AS BIGINT ARRAY), CAST(? AS BIGINT ARRAY)) AS l (film_id, user_id)
+                JOIN film_like AS fl ON fl.user_id = l.user_id AND fl.film_id = l.film_id;
+                """;
+
+        if (likes.isEmpty()) {
+            return Set.of();
+        }
+        Long[] filmsIds = new Long[likes.size()];
+        Long[] usersIds = new Long[likes.size()];
+        int i = 0;
+        for (FilmLike like : likes) {
+            filmsIds[i] = like.filmId();
+            usersIds[i] = like.userId();
+            i++;
+        }
+        final Object[] params = {
+                filmsIds,
+                usersIds
+        };
+        return new HashSet<>(jdbc.query(FIND_EXISTING_LIKES_QUERY,
+                (rs, rowNum) -> new FilmLike(rs.getLong(1), rs.getLong(2)), params));
+    }
+
+    private void checkLikeTargetsExist(Long filmId, Long userId) {
+        final String FIND_LIKE_TARGETS_QUERY = """
+                /* film.likeTargets */
+                SELECT (SELECT COUNT(*) FROM films WHERE id = ?),
+                       (SELECT COUNT(*) FROM users WHERE id = ?);
+                """;
+
+        jdbc.query(FIND_LIKE_TARGETS_QUERY, (RowCallbackHandler) rs -> {
+            if (rs.getLong(1) == 0L) {
+                log.warn(PROGRAM_LEVEL + ": Лайк не обработан - Film с ID: {} не найден", filmId);
+                throw new NotFoundException(PROGRAM_LEVEL + ": Фильм c ID: " + filmId + " не найден");
+            }
+            if (rs.getLong(2) == 0L) {
+                log.warn(PROGRAM_LEVEL + ": Лайк не обработан - User с ID: {} не найден", userId);
+                throw new NotFoundException(PROGRAM_LEVEL + ": User c ID: " + userId + " не найден в приложении");
+            }
+        }, filmId, userId);
+    }
+
+    private Map<Long, SequencedSet<Genre>> loadGenres(Object[] filmsIdsParams) {
+        final String FIND_GENRES_BY_FILMS_IDS_QUERY = """
+                /* film.getFilmsByIds.genres */
+                SELECT fg.film_id, fg.genre_id
+                FROM film_genre AS fg
+                WHERE fg.film_id = ANY(?)
+                ORDER BY fg.film_id, fg.genre_id;
+                """;
+
+        Map<Long, SequencedSet<Genre>> filmsGenres = new HashMap<>();
+        jdbc.query(FIND_GENRES_BY_FILMS_IDS_QUERY, (RowCallbackHandler) rs -> filmsGenres
+                .computeIfAbsent(rs.getLong("film_id"), filmId -> new LinkedHashSet<>())
+                .add(hydrator.getGenre(rs.getInt("genre_id"))), filmsIdsParams);
+        return filmsGenres;
+    }
+
+    private static List<Integer> genresIds(Film film) {
+        return film.getGenres().stream()
+                .map(Genre::getId)
+                .toList();
     }
 }
@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.dao.repositories;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Проверка денормализованного счетчика films.like_count относительно COUNT(*) по таблице film_like.
+ * Пересчет читает всю таблицу film_like, поэтому при старте выполняется один раз: после пересчета
+ * в schema_backfill записывается отметка, и следующие запуски только проверяют ее наличие.
+ * База, созданная до появления счетчика, отметки не имеет и пересчитывается при первом запуске новой версии.
+ * check-on-startup включает пересчет при каждом старте независимо от отметки.
+ */
+@Slf4j
+@Component
+public class FilmLikeCountChecker {
+
+    private static final String BACKFILL_NAME = "films.like_count";
+
+    private final JdbcOperations jdbc;
+
+    private final boolean checkOnStartup;
+
+    @Autowired
+    public FilmLikeCountChecker(JdbcOperations jdbc,
+                                @Value("${filmorate.films.like-count.check-on-startup:false}") boolean checkOnStartup) {
+        this.jdbc = jdbc;
+        this.checkOnStartup = checkOnStartup;
+    }
+
+    @PostConstruct
+    public void backfillOnStartup() {
+        final String FIND_BACKFILL_QUERY = """
+                /* filmLikeCountChecker.backfillOnStartup.find */
+                SELECT COUNT(*)
+                FROM schema_backfill
+                WHERE name = ?;
+                """;
+        final String MERGE_BACKFILL_QUERY = """
+                /* filmLikeCountChecker.backfillOnStartup.merge */
+                MERGE INTO schema_backfill (name)
+                KEY (name)
+                VALUES (?);
+                """;
+
+        Integer backfills = jdbc.queryForObject(FIND_BACKFILL_QUERY, Integer.class, BACKFILL_NAME);
+        if (!checkOnStartup && backfills != null && backfills > 0) {
+            return;
+        }
+        int repairedRows = repair();
+        if (repairedRows > 0) {
+            log.warn("FilmLikeCountChecker: Счетчик like_count пересчитан у {} фильмов", repairedRows);
+        }
+        jdbc.update(MERGE_BACKFILL_QUERY, BACKFILL_NAME);
+    }
+
+    public List<Long> findInconsistentFilmsIds() {
+        final String FIND_FILMS_IDS_WITH_INCONSISTENT_LIKE_COUNT_QUERY = """
+                /* filmLikeCountChecker.findInconsistentFilmsIds */
+                SELECT f.id
+                FROM films AS f
+                LEFT OUTER JOIN film_like AS fl ON f.id = fl.film_id
+                GROUP BY f.id, f.like_count
+                HAVING f.like_count <> COUNT(fl.user_id)
+                ORDER BY f.id;
+                """;
+
+        return jdbc.queryForList(FIND_FILMS_IDS_WITH_INCONSISTENT_LIKE_COUNT_QUERY, Long.class);
+    }
+
+    public int repair() {
+        final String UPDATE_INCONSISTENT_LIKE_COUNT_QUERY = """
+                /* filmLikeCountChecker.repair */
+                UPDATE films AS f
+                SET like_count = (SELECT COUNT(*) FROM film_like AS fl WHERE fl.film_id = f.id)
+                WHERE f.like_count <> (SELECT COUNT(*) FROM film_like AS fl WHERE fl.film_id = f.id);
+                """;
+
+        return jdbc.update(UPDATE_INCONSISTENT_LIKE_COUNT_QUERY);
+    }
+}
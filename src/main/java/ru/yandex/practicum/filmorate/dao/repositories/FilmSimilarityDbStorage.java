@@ -0,0 +1,167 @@
+package ru.yandex.practicum.filmorate.dao.repositories;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.FilmSimilarity;
+import ru.yandex.practicum.filmorate.storage.FilmSimilarityStorage;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+@Slf4j
+@Repository
+public class FilmSimilarityDbStorage implements FilmSimilarityStorage {
+
+    private static final int[] NO_GENRES = new int[0];
+
+    private final JdbcOperations jdbc;
+
+    @Autowired
+    public FilmSimilarityDbStorage(JdbcOperations jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @Override
+    public List<Long> getSimilarFilmsIds(Long filmId, int limit) {
+        final String FIND_SIMILAR_FILMS_IDS_QUERY = """
+                /* filmSimilarity.getSimilarFilmsIds */
+                SELECT similar_film_id
+                FROM film_similarity
+                WHERE film_id = ?
+                ORDER BY score DESC, similar_film_id
+                LIMIT ?;
+                """;
+
+        return jdbc.queryForList(FIND_SIMILAR_FILMS_IDS_QUERY, Long.class, filmId, limit);
+    }
+
+    /**
+     * Отсортированные ID жанров каждого фильма, включая фильмы без жанров, по возрастанию ID фильма.
+     * Строки передаются в consumer по мере чтения, без промежуточной Map.
+     */
+    @Override
+    public void forEachFilmGenres(FilmGenresConsumer consumer) {
+        final String FIND_ALL_FILMS_GENRES_IDS_QUERY = """
+                /* filmSimilarity.forEachFilmGenres */
+                SELECT f.id, fg.genre_id
+                FROM films AS f
+                LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
+                ORDER BY f.id, fg.genre_id;
+                """;
+
+        GenresCollector collector = new GenresCollector(consumer);
+        jdbc.query(FIND_ALL_FILMS_GENRES_IDS_QUERY, collector);
+        collector.flush();
+    }
+
+    /**
+     * Отсортированные ID жанров переданных фильмов. Несуществующие фильмы не передаются в consumer.
+     */
+    @Override
+    public void forEachFilmGenresByIds(long[] filmsIds, FilmGenresConsumer consumer) {
+        final String FIND_FILMS_GENRES_IDS_QUERY = """
+                /* filmSimilarity.forEachFilmGenresByIds */
+                SELECT f.id, fg.genre_id
+                FROM films AS f
+                LEFT OUTER JOIN film_genre AS fg ON f.id = fg.film_id
+                WHERE f.id = ANY(?)
+                ORDER BY f.id, fg.genre_id;
+                """;
+
+        if (filmsIds.length == 0) {
+            return;
+        }
+        final Object[] params = {
+                Arrays.stream(filmsIds).boxed().toArray(Long[]::new)
+        };
+        GenresCollector collector = new GenresCollector(consumer);
+        jdbc.query(FIND_FILMS_GENRES_IDS_QUERY, collector, params);
+        collector.flush();
+    }
+
+    /**
+     * Собирает жанры одного фильма из подряд идущих строк, упорядоченных по ID фильма.
+     */
+    private static final class GenresCollector implements RowCallbackHandler {
+        private final FilmGenresConsumer consumer;
+        private int[] genres = new int[8];
+        private int genresCount;
+        private long filmId = Long.MIN_VALUE;
+
+        GenresCollector(FilmGenresConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long rowFilmId = rs.getLong(1);
+            if (rowFilmId != filmId) {
+                flush();
+                filmId = rowFilmId;
+            }
+            int genreId = rs.getInt(2);
+            if (genreId != 0) {
+                if (genresCount == genres.length) {
+                    genres = Arrays.copyOf(genres, genres.length * 2);
+                }
+                genres[genresCount++] = genreId;
+            }
+        }
+
+        void flush() {
+            if (filmId != Long.MIN_VALUE) {
+                consumer.accept(filmId, (genresCount == 0) ? NO_GENRES : Arrays.copyOf(genres, genresCount));
+            }
+            filmId = Long.MIN_VALUE;
+            genresCount = 0;
+        }
+    }
+
+    /**
+     * Замена списков похожих фильмов для переданных фильмов в одной транзакции.
+     */
+    @Override
+    @Transactional
+    public void replaceSimilarities(long[] filmsIds, List<FilmSimilarity> similarities) {
+        final String DELETE_FILMS_SIMILARITIES_QUERY = """
+                /* filmSimilarity.replaceSimilarities.delete */
+                DELETE FROM film_similarity
+                WHERE film_id = ANY(?);
+                """;
+        final String INSERT_FILM_SIMILARITY_QUERY = """
+                /* filmSimilarity.replaceSimilarities.insert */
+                INSERT INTO film_similarity (film_id, similar_film_id, score)
+                VALUES (?, ?, ?);
+                """;
+
+        if (filmsIds.length == 0) {
+            return;
+        }
+        final Object[] params = {
+                Arrays.stream(filmsIds).boxed().toArray(Long[]::new)
+        };
+        jdbc.update(DELETE_FILMS_SIMILARITIES_QUERY, params);
+
+        jdbc.batchUpdate(INSERT_FILM_SIMILARITY_QUERY,
+                new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        FilmSimilarity similarity = similarities.get(i);
+                        ps.setLong(1, similarity.filmId());
+                        ps.setLong(2, similarity.similarFilmId());
+                        ps.setDouble(3, similarity.score());
+                    }
+
+                    public int getBatchSize() {
+                        return similarities.size();
+                    }
+                });
+        log.info("FilmSimilarityDbStorage: Обновлены похожие фильмы для {} фильмов", filmsIds.length);
+    }
+}
@@ -2,10 +2,12 @@ package ru.yandex.practicum.filmorate.dao.repositories;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.*;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.dao.jdbc.SqlStatementCreator;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
@@ -31,6 +33,7 @@ public class UserDbStorage implements UserStorage {
 
     public User getUserById(Long id) {
         final String FIND_USER_BY_ID_QUERY = """
+                /* user.getUserById */
                 SELECT *
                 FROM users
                 WHERE id = ?;
@@ -52,6 +55,7 @@ public class UserDbStorage implements UserStorage {
     @Override
     public User create(User user) {
         final String INSERT_USER_QUERY = """
+                /* user.create */
                 INSERT INTO users (name, email, login, birthday)
                 VALUES (?, ?, ?, ?);
                 """;
@@ -64,14 +68,14 @@ public class UserDbStorage implements UserStorage {
         };
 
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbc.update(connection -> {
+        jdbc.update(new SqlStatementCreator(INSERT_USER_QUERY, (connection, sql) -> {
             PreparedStatement ps = connection
-                    .prepareStatement(INSERT_USER_QUERY, Statement.RETURN_GENERATED_KEYS);
+                    .prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             for (int idx = 0; idx < params.length; idx++) {
                 ps.setObject(idx + 1, params[idx]);
             }
             return ps;
-        }, keyHolder);
+        }), keyHolder);
         Long generatedId = keyHolder.getKeyAs(Long.class);
         if (generatedId == null) {
             throw new InternalServerException("UserDbStorage: Не удалось сохранить данные User");
@@ -89,6 +93,7 @@ public class UserDbStorage implements UserStorage {
     @Override
     public User update(User user) {
         final String UPDATE_USER_QUERY = """
+                /* user.update */
                 UPDATE users SET name = ?, email = ?, login = ?, birthday = ?
                 WHERE id = ?;
                 """;
@@ -111,10 +116,12 @@ public class UserDbStorage implements UserStorage {
     @Override
     public List<User> getAllUsers() {
         final String FIND_ALL_USERS_QUERY = """
+                /* user.getAllUsers */
                 SELECT *
                 FROM users;
                 """;
         final String FIND_ALL_USERS_FRIENDS_IDS_QUERY = """
+                /* user.getAllUsers.friends */
                 SELECT *
                 FROM user_friend;
                 """;
@@ -127,12 +134,33 @@ public class UserDbStorage implements UserStorage {
         return tmpUsers;
     }
 
+    @Override
+    public List<User> getUsersPage(Long afterId, int limit) {
+        final String FIND_USERS_PAGE_QUERY = """
+                /* user.getUsersPage */
+                SELECT *
+                FROM users
+                WHERE id > ?
+                ORDER BY id
+                LIMIT ?;
+                """;
+
+        return jdbc.query(FIND_USERS_PAGE_QUERY, mapper, (afterId == null) ? 0L : afterId, limit);
+    }
+
 
+    /**
+     * Добавление друга одним запросом MERGE. Возвращает false, если друг был добавлен ранее.
+     * Существование пользователей проверяется только если вставка нарушила внешний ключ.
+     */
     @Override
-    public void addFriend(Long userId, Long friendId) {
-        final String INSERT_USER_FRIEND_QUERY = """
-                INSERT INTO user_friend (user_id, friend_id)
-                VALUES (?, ?);
+    public boolean addFriend(Long userId, Long friendId) {
+        final String MERGE_USER_FRIEND_QUERY = """
+                /* user.addFriend */
+                MERGE INTO user_friend AS uf
+                USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT))) AS f (user_id, friend_id)
+                ON uf.user_id = f.user_id AND uf.friend_id = f.friend_id
+                WHEN NOT MATCHED THEN INSERT (user_id, friend_id) VALUES (f.user_id, f.friend_id);
                 """;
 
         final Object[] params = {
@@ -140,25 +168,54 @@ public class UserDbStorage implements UserStorage {
                 friendId
         };
 
-        jdbc.update(INSERT_USER_FRIEND_QUERY, params);
+        try {
+            return jdbc.update(MERGE_USER_FRIEND_QUERY, params) > 0;
+        } catch (DataIntegrityViolationException e) {
+            checkUsersExist(userId, friendId);
+            throw e;
+        }
     }
 
+    /**
+     * Удаление друга одним запросом. Возвращает false, если друга не было в списке друзей.
+     */
     @Override
-    public void removeFriend(Long userId, Long friendId) {
+    public boolean removeFriend(Long userId, Long friendId) {
         final String DELETE_USER_FRIEND_QUERY = """
+                /* user.removeFriend */
                 DELETE FROM user_friend
                 WHERE user_id = ? AND friend_id = ?;
                 """;
 
         int rowsDeleted = jdbc.update(DELETE_USER_FRIEND_QUERY, userId, friendId);
         if (rowsDeleted == 0) {
+            checkUsersExist(userId, friendId);
             log.info("UserDbStorage: Не удалось удалить друга User с ID: {}", userId);
+            return false;
         }
+        return true;
+    }
+
+    private void checkUsersExist(Long userId, Long friendId) {
+        final String FIND_USERS_COUNT_QUERY = """
+                /* user.friendshipTargets */
+                SELECT (SELECT COUNT(*) FROM users WHERE id = ?),
+                       (SELECT COUNT(*) FROM users WHERE id = ?);
+                """;
+
+        jdbc.query(FIND_USERS_COUNT_QUERY, (RowCallbackHandler) rs -> {
+            Long missingUserId = (rs.getLong(1) == 0L) ? userId : (rs.getLong(2) == 0L) ? friendId : null;
+            if (missingUserId != null) {
+                log.warn("UserDbStorage: Не удалось получить объект User по его ID - не найден в приложении");
+                throw new NotFoundException("UserDbStorage: User c ID: " + missingUserId + " не найден в приложении");
+            }
+        }, userId, friendId);
     }
 
     @Override
     public List<User> getAllFriendsById(Long userId) {
         final String FIND_USER_FRIENDS_BY_ID_QUERY = """
+                /* user.getAllFriendsById */
                 SELECT *
                 FROM users
                 WHERE id IN (SELECT friend_id FROM user_friend WHERE user_id = ?);
@@ -167,21 +224,137 @@ public class UserDbStorage implements UserStorage {
         return jdbc.query(FIND_USER_FRIENDS_BY_ID_QUERY, mapper, userId);
     }
 
+    /**
+     * Общие друзья двух пользователей одним запросом с соединением user_friend самой с собой.
+     * Существование пользователей проверяется только если общих друзей не найдено.
+     */
+    @Override
+    public List<User> getCommonFriends(Long userId, Long anotherUserId) {
+        final String FIND_COMMON_FRIENDS_QUERY = """
+                /* user.getCommonFriends */
+                SELECT u.*
+                FROM user_friend AS uf
+                JOIN user_friend AS auf ON auf.friend_id = uf.friend_id AND auf.user_id = ?
+                JOIN users AS u ON u.id = uf.friend_id
+                WHERE uf.user_id = ?
+                ORDER BY u.id;
+                """;
+
+        List<User> commonFriends = jdbc.query(FIND_COMMON_FRIENDS_QUERY, mapper, anotherUserId, userId);
+        if (commonFriends.isEmpty()) {
+            checkUsersExist(userId, anotherUserId);
+        }
+        return commonFriends;
+    }
+
     @Override
-    public List<User> getUsersByIdSet(Set<Long> ids) {
+    public List<User> getUsersByIds(List<Long> usersIds) {
         final String FIND_USERS_BY_IDS_QUERY = """
+                /* user.getUsersByIds */
                 SELECT *
                 FROM users
-                WHERE id IN (%s);
+                WHERE id = ANY(?)
+                ORDER BY id;
+                """;
+
+        if (usersIds.isEmpty()) {
+            return List.of();
+        }
+        final Object[] params = {
+                usersIds.toArray(new Long[0])
+        };
+        return jdbc.query(FIND_USERS_BY_IDS_QUERY, mapper, params);
+    }
+
+    @Override
+    public Set<Long> getExistingUsersIds(Collection<Long> usersIds) {
+        final String FIND_EXISTING_USERS_IDS_QUERY = """
+                /* user.getExistingUsersIds */
+                SELECT id
+                FROM users
+                WHERE id = ANY(?);
+                """;
+
+        if (usersIds.isEmpty()) {
+            return Set.of();
+        }
+        final Object[] params = {
+                usersIds.toArray(new Long[0])
+        };
+        return new HashSet<>(jdbc.queryForList(FIND_EXISTING_USERS_IDS_QUERY, Long.class, params));
+    }
+
+    /**
+     * ID друзей каждого из переданных пользователей одним запросом, по возрастанию ID. Если друзей больше
+     * limitPerUser, возвращается случайная выборка из limitPerUser друзей, а не друзья с наименьшими ID,
+     * чтобы ограничение обхода не смещало результат к давно зарегистрированным пользователям.
+     */
+    @Override
+    public Map<Long, long[]> getFriendsIdsByUsersIds(Collection<Long> usersIds, int limitPerUser) {
+        final String FIND_FRIENDS_IDS_BY_USERS_IDS_QUERY = """
+                /* user.getFriendsIdsByUsersIds */
+                SELECT user_id, friend_id
+                FROM (SELECT user_id, friend_id,
+                             ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY RAND()) AS rn
+                      FROM user_friend
+                      WHERE user_id = ANY(?))
+                WHERE rn <= ?
+                ORDER BY user_id, friend_id;
+                """;
+
+        if (usersIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, long[]> friendsIds = new HashMap<>();
+        long[] row = new long[Math.max(limitPerUser, 0)];
+        int[] rowSize = {0};
+        long[] rowUserId = {Long.MIN_VALUE};
+        jdbc.query(FIND_FRIENDS_IDS_BY_USERS_IDS_QUERY, (RowCallbackHandler) rs -> {
+            long userId = rs.getLong(1);
+            if (userId != rowUserId[0]) {
+                if (rowSize[0] > 0) {
+                    friendsIds.put(rowUserId[0], Arrays.copyOf(row, rowSize[0]));
+                }
+                rowUserId[0] = userId;
+                rowSize[0] = 0;
+            }
+            row[rowSize[0]++] = rs.getLong(2);
+        }, usersIds.toArray(new Long[0]), limitPerUser);
+        if (rowSize[0] > 0) {
+            friendsIds.put(rowUserId[0], Arrays.copyOf(row, rowSize[0]));
+        }
+        return friendsIds;
+    }
+
+    /**
+     * ID пользователей из candidatesIds, которые уже есть в списке друзей userId, по возрастанию.
+     */
+    @Override
+    public long[] getFriendsIdsAmong(Long userId, long[] candidatesIds) {
+        final String FIND_FRIENDS_IDS_AMONG_QUERY = """
+                /* user.getFriendsIdsAmong */
+                SELECT friend_id
+                FROM user_friend
+                WHERE user_id = ? AND friend_id = ANY(?)
+                ORDER BY friend_id;
                 """;
-        final String sqlPlaceholders = String.join(",", Collections.nCopies(ids.size(), "?"));
 
-        return jdbc.query(String.format(FIND_USERS_BY_IDS_QUERY, sqlPlaceholders), mapper, ids.toArray());
+        if (candidatesIds.length == 0) {
+            return new long[0];
+        }
+        final Object[] params = {
+                userId,
+                Arrays.stream(candidatesIds).boxed().toArray(Long[]::new)
+        };
+        return jdbc.queryForList(FIND_FRIENDS_IDS_AMONG_QUERY, Long.class, params).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
     }
 
     @Override
     public Set<Long> getUserFriendsIdsById(Long userId) {
         final String FIND_USER_FRIENDS_IDS_BY_ID_QUERY = """
+                /* user.getUserFriendsIdsById */
                 SELECT friend_id
                 FROM user_friend
                 WHERE user_id = ?;
@@ -0,0 +1,390 @@
+package ru.yandex.practicum.filmorate.dao.seed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dao.graph.FriendGraph;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikeBitmapIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Заполнение пустой базы синтетическими данными при запуске с профилем seed:
+ * java -jar filmorate.jar --spring.profiles.active=seed
+ * Популярность фильмов распределена по Zipf, активность пользователей - по Парето,
+ * степени в графе друзей - степенные (предпочтительное присоединение). Все случайные величины
+ * берутся из одного генератора с заданным зерном, поэтому одинаковые настройки дают одинаковые данные.
+ * Строки пишутся пакетами JDBC в одной транзакции, затем перестраиваются индексы в памяти.
+ */
+@Slf4j
+@Component
+@Profile("seed")
+public class SyntheticDataGenerator implements ApplicationRunner {
+
+    private static final String PROGRAM_LEVEL = "SyntheticDataGenerator";
+
+    private static final LocalDate FIRST_RELEASE_DATE = LocalDate.of(1950, 1, 1);
+
+    private static final int RELEASE_DAYS = 75 * 365;
+
+    // доли жанров 1..6 из data.sql: комедия, драма, мультфильм, триллер, документальный, боевик
+    private static final double[] GENRE_WEIGHTS = {0.30, 0.25, 0.08, 0.15, 0.04, 0.18};
+
+    private static final double ACTIVITY_PARETO_ALPHA = 1.5;
+
+    private final JdbcOperations jdbc;
+
+    private final ObjectProvider<FilmPopularityIndex> popularityIndex;
+
+    private final ObjectProvider<FilmLikeBitmapIndex> likeBitmapIndex;
+
+    private final ObjectProvider<FilmSearchIndex> searchIndex;
+
+    private final ObjectProvider<FriendGraph> friendGraph;
+
+    private final int usersCount;
+
+    private final int filmsCount;
+
+    private final long likesCount;
+
+    private final int friendsPerUser;
+
+    private final double zipfExponent;
+
+    private final long randomSeed;
+
+    private final int batchSize;
+
+    @Autowired
+    public SyntheticDataGenerator(JdbcOperations jdbc,
+            ObjectProvider<FilmPopularityIndex> popularityIndex,
+            ObjectProvider<FilmLikeBitmapIndex> likeBitmapIndex,
+            ObjectProvider<FilmSearchIndex> searchIndex,
+            ObjectProvider<FriendGraph> friendGraph,
+            @Value("${filmorate.seed.users:100000}") int usersCount,
+            @Value("${filmorate.seed.films:50000}") int filmsCount,
+            @Value("${filmorate.seed.likes:2000000}") long likesCount,
+            @Value("${filmorate.seed.friends-per-user:5}") int friendsPerUser,
+            @Value("${filmorate.seed.zipf-exponent:1.0}") double zipfExponent,
+            @Value("${filmorate.seed.random-seed:42}") long randomSeed,
+            @Value("${filmorate.seed.batch-size:10000}") int batchSize) {
+        this.jdbc = jdbc;
+        this.popularityIndex = popularityIndex;
+        this.likeBitmapIndex = likeBitmapIndex;
+        this.searchIndex = searchIndex;
+        this.friendGraph = friendGraph;
+        this.usersCount = usersCount;
+        this.filmsCount = filmsCount;
+        this.likesCount = likesCount;
+        this.friendsPerUser = friendsPerUser;
+        this.zipfExponent = zipfExponent;
+        this.randomSeed = randomSeed;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Long existingRows = jdbc.queryForObject("""
+                /* syntheticDataGenerator.countRows */
+                SELECT (SELECT COUNT(*) FROM films) + (SELECT COUNT(*) FROM users);
+                """, Long.class);
+        if (existingRows != null && existingRows > 0) {
+            log.warn(PROGRAM_LEVEL + ": База не пуста, генерация данных пропущена");
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        SplittableRandom random = new SplittableRandom(randomSeed);
+        long[] counts = jdbc.execute((ConnectionCallback<long[]>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                long[] written = generate(connection, random);
+                connection.commit();
+                return written;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+        jdbc.execute("ALTER TABLE films ALTER COLUMN id RESTART WITH " + (filmsCount + 1L));
+        jdbc.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (usersCount + 1L));
+        jdbc.execute("ANALYZE");
+
+        popularityIndex.ifAvailable(FilmPopularityIndex::rebuild);
+        likeBitmapIndex.ifAvailable(FilmLikeBitmapIndex::rebuild);
+        searchIndex.ifAvailable(FilmSearchIndex::rebuild);
+        friendGraph.ifAvailable(FriendGraph::rebuild);
+        log.info(PROGRAM_LEVEL + ": Сгенерировано пользователей: {}, фильмов: {}, жанров фильмов: {}, лайков: {}, "
+                        + "друзей: {} за {} мс", usersCount, filmsCount, counts[0], counts[1], counts[2],
+                (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    private long[] generate(Connection connection, SplittableRandom random) throws SQLException {
+        insertUsers(connection, random);
+        long genres = insertFilms(connection, random);
+        long likes = insertLikes(connection, random);
+        long friends = insertFriends(connection, random);
+        return new long[]{genres, likes, friends};
+    }
+
+    private void insertUsers(Connection connection, SplittableRandom random) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement("""
+                INSERT INTO users (id, name, email, login, birthday)
+                VALUES (?, ?, ?, ?, ?);
+                """)) {
+            BatchWriter batch = new BatchWriter(ps, null);
+            for (int userId = 1; userId <= usersCount; userId++) {
+                ps.setLong(1, userId);
+                ps.setString(2, "User " + userId);
+                ps.setString(3, "user" + userId + "@mail.com");
+                ps.setString(4, "user" + userId);
+                ps.setDate(5, Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(60 * 365))));
+                batch.add();
+            }
+            batch.flush();
+        }
+    }
+
+    private long insertFilms(Connection connection, SplittableRandom random) throws SQLException {
+        long genresWritten = 0;
+        try (PreparedStatement films = connection.prepareStatement("""
+                INSERT INTO films (id, name, description, release_date, duration, mpa_rating_id)
+                VALUES (?, ?, ?, ?, ?, ?);
+                """);
+             PreparedStatement genres = connection.prepareStatement("""
+                INSERT INTO film_genre (film_id, genre_id)
+                VALUES (?, ?);
+                """)) {
+            BatchWriter filmsBatch = new BatchWriter(films, null);
+            // жанры ссылаются на фильм, поэтому перед пакетом жанров всегда уходит пакет фильмов
+            BatchWriter genresBatch = new BatchWriter(genres, filmsBatch);
+            for (int filmId = 1; filmId <= filmsCount; filmId++) {
+                films.setLong(1, filmId);
+                films.setString(2, "Film " + filmId);
+                films.setString(3, "Description of film " + filmId);
+                films.setDate(4, Date.valueOf(FIRST_RELEASE_DATE.plusDays(random.nextInt(RELEASE_DAYS))));
+                films.setInt(5, 60 + random.nextInt(120));
+                films.setInt(6, 1 + random.nextInt(5));
+                filmsBatch.add();
+
+                int filmGenres = 1 + ((random.nextDouble() < 0.3) ? 1 : 0) + ((random.nextDouble() < 0.1) ? 1 : 0);
+                Set<Integer> chosen = new HashSet<>();
+                for (int i = 0; i < filmGenres; i++) {
+                    int genreId = 1 + sampleWeighted(GENRE_WEIGHTS, random);
+                    if (chosen.add(genreId)) {
+                        genres.setLong(1, filmId);
+                        genres.setInt(2, genreId);
+                        genresBatch.add();
+                        genresWritten++;
+                    }
+                }
+            }
+            genresBatch.flush();
+        }
+        return genresWritten;
+    }
+
+    /**
+     * Количество лайков пользователя пропорционально его активности (Парето), фильм выбирается по Zipf
+     * среди перемешанных ID, поэтому популярные фильмы не совпадают с первыми ID.
+     */
+    private long insertLikes(Connection connection, SplittableRandom random) throws SQLException {
+        double[] zipfCdf = zipfCdf(filmsCount, zipfExponent);
+        int[] filmByRank = shuffledIds(filmsCount, random);
+
+        double[] activity = new double[usersCount];
+        double totalActivity = 0.0;
+        for (int i = 0; i < usersCount; i++) {
+            activity[i] = Math.pow(1.0 - random.nextDouble(), -1.0 / ACTIVITY_PARETO_ALPHA);
+            totalActivity += activity[i];
+        }
+
+        int maxLikesPerUser = Math.max(filmsCount / 2, 1);
+        long[] likesByFilm = new long[filmsCount + 1];
+        long likesWritten = 0;
+        try (PreparedStatement ps = connection.prepareStatement("""
+                INSERT INTO film_like (user_id, film_id)
+                VALUES (?, ?);
+                """)) {
+            BatchWriter batch = new BatchWriter(ps, null);
+            Set<Integer> liked = new HashSet<>();
+            for (int i = 0; i < usersCount; i++) {
+                int userLikes = (int) Math.min(Math.round(activity[i] / totalActivity * likesCount), maxLikesPerUser);
+                liked.clear();
+                for (int attempt = 0; liked.size() < userLikes && attempt < userLikes * 10; attempt++) {
+                    int filmId = filmByRank[sampleCdf(zipfCdf, random)];
+                    if (liked.add(filmId)) {
+                        ps.setLong(1, i + 1L);
+                        ps.setLong(2, filmId);
+                        batch.add();
+                        likesByFilm[filmId]++;
+                        likesWritten++;
+                    }
+                }
+            }
+            batch.flush();
+        }
+
+        try (PreparedStatement ps = connection.prepareStatement("""
+                UPDATE films
+                SET like_count = ?
+                WHERE id = ?;
+                """)) {
+            BatchWriter batch = new BatchWriter(ps, null);
+            for (int filmId = 1; filmId <= filmsCount; filmId++) {
+                if (likesByFilm[filmId] > 0) {
+                    ps.setLong(1, likesByFilm[filmId]);
+                    ps.setLong(2, filmId);
+                    batch.add();
+                }
+            }
+            batch.flush();
+        }
+        return likesWritten;
+    }
+
+    /**
+     * Граф друзей по модели предпочтительного присоединения: каждый новый пользователь дружит
+     * с friends-per-user уже добавленными, выбранными с вероятностью, пропорциональной их числу друзей.
+     * Дружба записывается в обе стороны.
+     */
+    private long insertFriends(Connection connection, SplittableRandom random) throws SQLException {
+        if (usersCount < 2 || friendsPerUser <= 0) {
+            return 0;
+        }
+        int[] endpoints = new int[(int) Math.min(2L * usersCount * friendsPerUser, Integer.MAX_VALUE - 8)];
+        int endpointsSize = 0;
+        long friendsWritten = 0;
+        try (PreparedStatement ps = connection.prepareStatement("""
+                INSERT INTO user_friend (user_id, friend_id)
+                VALUES (?, ?);
+                """)) {
+            BatchWriter batch = new BatchWriter(ps, null);
+            Set<Integer> chosen = new HashSet<>();
+            for (int userId = 2; userId <= usersCount; userId++) {
+                int edges = Math.min(friendsPerUser, userId - 1);
+                chosen.clear();
+                for (int attempt = 0; chosen.size() < edges && attempt < edges * 10; attempt++) {
+                    int friendId = (endpointsSize == 0 || chosen.size() + 1 >= userId)
+                            ? 1 + random.nextInt(userId - 1)
+                            : endpoints[random.nextInt(endpointsSize)];
+                    if (friendId == userId || !chosen.add(friendId)) {
+                        continue;
+                    }
+                    for (long[] edge : new long[][]{{userId, friendId}, {friendId, userId}}) {
+                        ps.setLong(1, edge[0]);
+                        ps.setLong(2, edge[1]);
+                        batch.add();
+                    }
+                    friendsWritten += 2;
+                    if (endpointsSize + 2 <= endpoints.length) {
+                        endpoints[endpointsSize++] = userId;
+                        endpoints[endpointsSize++] = friendId;
+                    }
+                }
+            }
+            batch.flush();
+        }
+        return friendsWritten;
+    }
+
+    private static double[] zipfCdf(int size, double exponent) {
+        double[] cdf = new double[size];
+        double sum = 0.0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cdf[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cdf[rank] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sampleCdf(double[] cdf, SplittableRandom random) {
+        int pos = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min((pos >= 0) ? pos : -pos - 1, cdf.length - 1);
+    }
+
+    private static int sampleWeighted(double[] weights, SplittableRandom random) {
+        double point = random.nextDouble();
+        for (int i = 0; i < weights.length - 1; i++) {
+            point -= weights[i];
+            if (point < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private static int[] shuffledIds(int size, SplittableRandom random) {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i + 1;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Накопление строк в пакет PreparedStatement с отправкой каждые batch-size строк.
+     * Если задан parent, его пакет отправляется раньше, чтобы строки с внешними ключами
+     * не опережали строки, на которые они ссылаются.
+     */
+    private final class BatchWriter {
+
+        private final PreparedStatement ps;
+
+        private final BatchWriter parent;
+
+        private int pending;
+
+        BatchWriter(PreparedStatement ps, BatchWriter parent) {
+            this.ps = ps;
+            this.parent = parent;
+        }
+
+        void add() throws SQLException {
+            ps.addBatch();
+            if (++pending >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (parent != null) {
+                parent.flush();
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+                pending = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.model;
+
+/**
+ * Лайк пользователя userId фильму filmId.
+ */
+public record FilmLike(Long filmId, Long userId) {
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+/**
+ * Результат обработки одного лайка из пакетного запроса.
+ */
+public record FilmLikeResult(Long filmId, Long userId, Status status) {
+
+    public enum Status {
+        CREATED,
+        ALREADY_EXISTS,
+        FILM_NOT_FOUND,
+        USER_NOT_FOUND,
+        INVALID
+    }
+}
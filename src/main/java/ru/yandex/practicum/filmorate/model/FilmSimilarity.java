@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.model;
+
+/**
+ * Оценка похожести фильма similarFilmId на фильм filmId.
+ */
+public record FilmSimilarity(long filmId, long similarFilmId, double score) {
+}
@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.List;
+
+/**
+ * Страница списка объектов при постраничной выборке по ключу (keyset pagination).
+ * nextCursor - ID последнего объекта страницы, либо null, если страница последняя.
+ */
+public record Page<T>(List<T> items, Long nextCursor) {
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikeBitmapIndex;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.validation.ValidationTool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Рекомендации фильмов методом коллаборативной фильтрации: берутся пользователи с наибольшим
+ * числом общих лайков, их фильмы без лайка запрашивающего пользователя ранжируются
+ * по сумме общих лайков пользователей, которым они понравились.
+ */
+@Slf4j
+@Service
+public class FilmRecommendationService {
+
+    private static final String PROGRAM_LEVEL = "FilmRecommendationService";
+
+    private static final int MAX_RECOMMENDATIONS = 100;
+
+    private final FilmLikeBitmapIndex likeIndex;
+
+    private final FilmStorage filmStorage;
+
+    private final UserStorage userStorage;
+
+    private final int neighborsCount;
+
+    @Autowired
+    public FilmRecommendationService(FilmLikeBitmapIndex likeIndex, FilmStorage filmStorage, UserStorage userStorage,
+                                     @Value("${filmorate.films.recommendations.neighbors:50}") int neighborsCount) {
+        this.likeIndex = likeIndex;
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+        this.neighborsCount = neighborsCount;
+    }
+
+    public List<Film> getRecommendations(Long userId, int limit) {
+        ValidationTool.checkId(userId, PROGRAM_LEVEL, "Рекомендации фильмов не могут быть получены по некорректному ID:"
+                + userId);
+        if (limit < 1 || limit > MAX_RECOMMENDATIONS) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Количество рекомендаций должно быть от 1 до "
+                    + MAX_RECOMMENDATIONS);
+        }
+
+        userStorage.getUserById(userId);
+
+        RoaringBitmap likedFilms = likeIndex.copyLikedFilms(userId);
+        List<FilmLikeBitmapIndex.Neighbor> neighbors = likeIndex.findNeighbors(userId, neighborsCount);
+        LongIntCounter scores = new LongIntCounter(64);
+        for (FilmLikeBitmapIndex.Neighbor neighbor : neighbors) {
+            likeIndex.getLikedFilmsExcept(neighbor.userId(), likedFilms)
+                    .forEach((int filmId) -> scores.add(filmId, neighbor.commonLikes()));
+        }
+
+        long[] recommendedIds = scores.topKeys(limit);
+        List<Long> filmsIds = new ArrayList<>(recommendedIds.length);
+        for (long filmId : recommendedIds) {
+            filmsIds.add(filmId);
+        }
+        log.info(PROGRAM_LEVEL + ": Для User с ID: {} найдено похожих пользователей: {}", userId, neighbors.size());
+        return filmStorage.getFilmsByIds(filmsIds);
+    }
+}
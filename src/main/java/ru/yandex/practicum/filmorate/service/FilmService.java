@@ -3,16 +3,18 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.buffer.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.reference.ReferenceDataRegistry;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.*;
-import ru.yandex.practicum.filmorate.model.enums.GenreValueList;
-import ru.yandex.practicum.filmorate.model.enums.RatingValueList;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.validation.ValidationTool;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
@@ -22,16 +24,63 @@ public class FilmService {
 
     private final UserStorage userStorage;
 
-    private final static String PROGRAM_LEVEL = "FilmService";
+    private final ReferenceDataRegistry registry;
+
+    private final Optional<LikeWriteBuffer> likeWriteBuffer;
+
+    private final FilmSearchIndex searchIndex;
+
+    private final FilmSimilarityService similarityService;
+
+    private static final String PROGRAM_LEVEL = "FilmService";
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int MAX_BATCH_SIZE = 10_000;
+
+    private static final int MAX_SEARCH_RESULTS = 100;
+
+    private static final int MAX_SEARCH_QUERY_LENGTH = 200;
+
+    private static final int MIN_RELEASE_YEAR = 1895;
+
+    private static final int MAX_RELEASE_YEAR = 9999;
 
     @Autowired
-    public FilmService(FilmStorage filmStorage, UserStorage userStorage) {
+    public FilmService(FilmStorage filmStorage, UserStorage userStorage, ReferenceDataRegistry registry,
+                       Optional<LikeWriteBuffer> likeWriteBuffer, FilmSearchIndex searchIndex,
+                       FilmSimilarityService similarityService) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.registry = registry;
+        this.likeWriteBuffer = likeWriteBuffer;
+        this.searchIndex = searchIndex;
+        this.similarityService = similarityService;
     }
 
     public List<Film> getAllFilms() {
-        return List.copyOf(filmStorage.getAllFilms());
+        return filmStorage.getAllFilms();
+    }
+
+    public void streamAllFilms(Consumer<Film> consumer) {
+        filmStorage.streamAllFilms(consumer);
+        log.info(PROGRAM_LEVEL + ": Выгрузка всех фильмов завершена");
+    }
+
+    public Page<Film> getFilmsPage(Long afterId, Integer limit) {
+        int pageSize = (limit == null) ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        if (afterId != null && afterId < 0L) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Курсор страницы не может быть отрицательным");
+        }
+
+        List<Film> films = filmStorage.getFilmsPage(afterId, pageSize);
+        Long nextCursor = (films.size() == pageSize) ? films.getLast().getId() : null;
+        return new Page<>(films, nextCursor);
     }
 
     public Film getFilmById(Long id) {
@@ -44,49 +93,55 @@ public class FilmService {
         return film;
     }
 
+    public List<Film> searchFilms(String query, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Поисковый запрос не может быть пустым");
+        }
+        if (query.length() > MAX_SEARCH_QUERY_LENGTH) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Поисковый запрос не может быть длиннее "
+                    + MAX_SEARCH_QUERY_LENGTH + " символов");
+        }
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Количество результатов поиска должно быть от 1 до "
+                    + MAX_SEARCH_RESULTS);
+        }
+
+        List<Long> filmsIds = searchIndex.search(query, limit);
+        log.info(PROGRAM_LEVEL + ": По запросу найдено фильмов: {}", filmsIds.size());
+        return filmStorage.getFilmsByIds(filmsIds);
+    }
+
     public Film create(Film film) {
         ValidationTool.filmCheck(film, PROGRAM_LEVEL);
 
-        SequencedSet<Genre> validGenresSet = new LinkedHashSet<>();
-        if ((film.getGenres() != null) && !(film.getGenres().isEmpty())) {
-            for (Genre genre : film.getGenres()) {
-                if ((genre.getId() < 1) || (genre.getId() > GenreValueList.values().length)) {
-                    throw new NotFoundException(PROGRAM_LEVEL +": Жанр с ID: " + genre.getId() + " не найден в приложении");
-                }
-                if ((genre.getName() != null) && (GenreValueList.isCorrectGenre(genre.getName()))) {
-                    validGenresSet.add(genre);
-                } else {
-                    Genre validGenre = new Genre(genre.getId(), GenreValueList.values()[genre.getId() - 1].getGenre());
-                    validGenresSet.add(validGenre);
-                }
-            }
+        Film createdFilm = filmStorage.create(withReferenceData(film));
+        searchIndex.put(createdFilm);
+        similarityService.markFilmChanged(createdFilm.getId());
+        return createdFilm;
+    }
+
+    public List<Film> createAll(List<Film> films) {
+        if (films == null || films.isEmpty()) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Список фильмов для добавления не может быть пустым");
+        }
+        if (films.size() > MAX_BATCH_SIZE) {
+            throw new ValidationException(PROGRAM_LEVEL + ": За один запрос можно добавить не более "
+                    + MAX_BATCH_SIZE + " фильмов");
         }
 
-        Rating validFilmRating;
-        if (film.getMpa() == null) {
-            validFilmRating = new Rating(1, RatingValueList.values()[0].getRating());
-        } else {
-            if ((film.getMpa().getId() < 1) || (film.getMpa().getId() > RatingValueList.values().length)) {
-                throw new NotFoundException("FilmDbService: MPA рейтинг с ID: " + film.getMpa().getId() + " не найден в приложении");
-            }
-            if ((film.getMpa().getName() != null) && (RatingValueList.isCorrectRating(film.getMpa().getName()))) {
-                validFilmRating = film.getMpa();
-            } else {
-                validFilmRating = new Rating(film.getMpa().getId(),
-                        RatingValueList.values()[film.getMpa().getId() - 1].getRating());
+        List<Film> validFilms = new ArrayList<>(films.size());
+        for (Film film : films) {
+            if (film == null) {
+                throw new ValidationException(PROGRAM_LEVEL + ": Список фильмов не может содержать null");
             }
+            ValidationTool.filmCheck(film, PROGRAM_LEVEL);
+            validFilms.add(withReferenceData(film));
         }
-
-        Film validFilm = new Film(
-                film.getId(),
-                film.getName(),
-                film.getDescription(),
-                film.getReleaseDate(),
-                film.getDuration(),
-                Collections.unmodifiableSequencedSet(validGenresSet),
-                validFilmRating
-        );
-        return filmStorage.create(validFilm);
+        List<Film> createdFilms = filmStorage.createAll(validFilms);
+        searchIndex.putAll(createdFilms);
+        createdFilms.forEach(createdFilm -> similarityService.markFilmChanged(createdFilm.getId()));
+        log.info(PROGRAM_LEVEL + ": Добавлено фильмов: {}", createdFilms.size());
+        return createdFilms;
     }
 
     public Film update(Film film) {
@@ -94,37 +149,35 @@ public class FilmService {
 
         getFilmById(film.getId());
 
+        Film updatedFilm = filmStorage.update(withReferenceData(film));
+        searchIndex.put(updatedFilm);
+        similarityService.markFilmChanged(updatedFilm.getId());
+        return updatedFilm;
+    }
+
+    /**
+     * Проверяет ID жанров и MPA рейтинга по справочнику и заменяет переданные объекты
+     * на экземпляры из справочника. Если рейтинг не указан, используется рейтинг с ID 1.
+     */
+    private Film withReferenceData(Film film) {
         SequencedSet<Genre> validGenresSet = new LinkedHashSet<>();
         if ((film.getGenres() != null) && !(film.getGenres().isEmpty())) {
             for (Genre genre : film.getGenres()) {
-                if ((genre.getId() < 1) || (genre.getId() > GenreValueList.values().length)) {
-                    throw new NotFoundException("FilmDbService: Жанр с ID: " + genre.getId() + " не найден в приложении");
-                }
-                if ((genre.getName() != null) && (GenreValueList.isCorrectGenre(genre.getName()))) {
-                    validGenresSet.add(genre);
-                } else {
-                    Genre validGenre = new Genre(genre.getId(), GenreValueList.values()[genre.getId() - 1].getGenre());
-                    validGenresSet.add(validGenre);
+                Genre validGenre = (genre.getId() == null) ? null : registry.findGenre(genre.getId());
+                if (validGenre == null) {
+                    throw new NotFoundException(PROGRAM_LEVEL + ": Жанр с ID: " + genre.getId() + " не найден в приложении");
                 }
+                validGenresSet.add(validGenre);
             }
         }
 
-        Rating validFilmRating;
-        if (film.getMpa() == null) {
-            validFilmRating = new Rating(1, RatingValueList.values()[0].getRating());
-        } else {
-            if ((film.getMpa().getId() < 1) || (film.getMpa().getId() > RatingValueList.values().length)) {
-                throw new NotFoundException("FilmDbService: MPA рейтинг с ID: " + film.getMpa().getId() + " не найден в приложении");
-            }
-            if ((film.getMpa().getName() != null) && (RatingValueList.isCorrectRating(film.getMpa().getName()))) {
-                validFilmRating = film.getMpa();
-            } else {
-                validFilmRating = new Rating(film.getMpa().getId(),
-                        RatingValueList.values()[film.getMpa().getId() - 1].getRating());
-            }
+        int ratingId = (film.getMpa() == null || film.getMpa().getId() == null) ? 1 : film.getMpa().getId();
+        Rating validFilmRating = registry.findRating(ratingId);
+        if (validFilmRating == null) {
+            throw new NotFoundException(PROGRAM_LEVEL + ": MPA рейтинг с ID: " + ratingId + " не найден в приложении");
         }
 
-        Film validFilm = new Film(
+        return new Film(
                 film.getId(),
                 film.getName(),
                 film.getDescription(),
@@ -133,19 +186,21 @@ public class FilmService {
                 Collections.unmodifiableSequencedSet(validGenresSet),
                 validFilmRating
         );
-        return filmStorage.update(validFilm);
     }
 
-
     public void addLike(Long filmId, Long userId) {
         ValidationTool.checkForNull(filmId, PROGRAM_LEVEL, "Лайк к фильму не может быть добален по ID фильма = null");
 
         ValidationTool.checkForNull(userId, PROGRAM_LEVEL, "Лайк к фильму не может быть добален по ID пользователя = null");
 
-        filmStorage.getFilmById(filmId);
-        userStorage.getUserById(userId);
-
-        filmStorage.addLike(filmId, userId);
+        if (likeWriteBuffer.isPresent()) {
+            // запись в БД отложена, поэтому фильм и пользователь проверяются заранее
+            filmStorage.getFilmById(filmId);
+            userStorage.getUserById(userId);
+            likeWriteBuffer.get().addLike(filmId, userId);
+        } else {
+            filmStorage.addLike(filmId, userId);
+        }
         log.info("Лайк фильму успешно добавлен");
     }
 
@@ -154,14 +209,84 @@ public class FilmService {
 
         ValidationTool.checkForNull(userId, PROGRAM_LEVEL, "Лайк у фильма не может быть удален по ID пользователя = null");
 
-        filmStorage.getFilmById(filmId);
-        userStorage.getUserById(userId);
-
-        filmStorage.removeLike(filmId, userId);
+        if (likeWriteBuffer.isPresent()) {
+            filmStorage.getFilmById(filmId);
+            userStorage.getUserById(userId);
+            likeWriteBuffer.get().removeLike(filmId, userId);
+        } else {
+            filmStorage.removeLike(filmId, userId);
+        }
         log.info("Лайк фильма успешно удален");
     }
 
-    public List<Film> getPopularFilms(int limit) {
-        return List.copyOf(filmStorage.getTopFilms(limit));
+    /**
+     * Пакетное добавление лайков. Существование фильмов и пользователей проверяется двумя запросами
+     * на весь пакет, лайки с несуществующими или пустыми ID пропускаются,
+     * повторный лайк не считается ошибкой. Результат возвращается для каждого элемента в порядке запроса.
+     */
+    public List<FilmLikeResult> addLikes(List<FilmLike> likes) {
+        if (likes == null || likes.isEmpty()) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Список лайков не может быть пустым");
+        }
+        if (likes.size() > MAX_BATCH_SIZE) {
+            throw new ValidationException(PROGRAM_LEVEL + ": За один запрос можно добавить не более "
+                    + MAX_BATCH_SIZE + " лайков");
+        }
+
+        Set<Long> filmsIds = new HashSet<>();
+        Set<Long> usersIds = new HashSet<>();
+        for (FilmLike like : likes) {
+            if (like != null && like.filmId() != null && like.userId() != null) {
+                filmsIds.add(like.filmId());
+                usersIds.add(like.userId());
+            }
+        }
+        Set<Long> existingFilmsIds = filmStorage.getExistingFilmsIds(filmsIds);
+        Set<Long> existingUsersIds = userStorage.getExistingUsersIds(usersIds);
+
+        FilmLikeResult.Status[] statuses = new FilmLikeResult.Status[likes.size()];
+        List<FilmLike> validLikes = new ArrayList<>();
+        List<Integer> validLikesPositions = new ArrayList<>();
+        for (int i = 0; i < likes.size(); i++) {
+            FilmLike like = likes.get(i);
+            if (like == null || like.filmId() == null || like.userId() == null) {
+                statuses[i] = FilmLikeResult.Status.INVALID;
+            } else if (!existingFilmsIds.contains(like.filmId())) {
+                statuses[i] = FilmLikeResult.Status.FILM_NOT_FOUND;
+            } else if (!existingUsersIds.contains(like.userId())) {
+                statuses[i] = FilmLikeResult.Status.USER_NOT_FOUND;
+            } else {
+                validLikes.add(like);
+                validLikesPositions.add(i);
+            }
+        }
+
+        boolean[] created = filmStorage.addLikes(validLikes);
+        for (int i = 0; i < created.length; i++) {
+            statuses[validLikesPositions.get(i)] = created[i]
+                    ? FilmLikeResult.Status.CREATED
+                    : FilmLikeResult.Status.ALREADY_EXISTS;
+        }
+
+        List<FilmLikeResult> results = new ArrayList<>(likes.size());
+        for (int i = 0; i < likes.size(); i++) {
+            FilmLike like = likes.get(i);
+            results.add((like == null)
+                    ? new FilmLikeResult(null, null, statuses[i])
+                    : new FilmLikeResult(like.filmId(), like.userId(), statuses[i]));
+        }
+        log.info(PROGRAM_LEVEL + ": Обработан пакет лайков, размер: {}", likes.size());
+        return results;
+    }
+
+    public List<Film> getPopularFilms(int limit, Integer genreId, Integer year) {
+        if (genreId != null && registry.findGenre(genreId) == null) {
+            throw new NotFoundException(PROGRAM_LEVEL + ": Жанр с ID: " + genreId + " не найден в приложении");
+        }
+        if (year != null && (year < MIN_RELEASE_YEAR || year > MAX_RELEASE_YEAR)) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Год выпуска должен быть от " + MIN_RELEASE_YEAR
+                    + " до " + MAX_RELEASE_YEAR);
+        }
+        return List.copyOf(filmStorage.getTopFilms(limit, genreId, year));
     }
 }
@@ -0,0 +1,417 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikeBitmapIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikeListener;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmSimilarity;
+import ru.yandex.practicum.filmorate.storage.FilmSimilarityStorage;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.validation.ValidationTool;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Похожие фильмы ("more like this"). Списки из neighbors ближайших фильмов рассчитываются фоновой задачей
+ * и хранятся в таблице film_similarity, чтение - один запрос по индексу.
+ * Оценка: косинусная мера по совместным лайкам плюс genre-weight * мера Жаккара по жанрам.
+ * Кандидаты - фильмы с лайками тех же пользователей (не более max-fan-out пользователей фильма
+ * и фильмов пользователя) и самые популярные фильмы тех же жанров. Фильмы рассчитываются параллельно.
+ * Между полными пересчетами обновляются только добавленные и измененные фильмы, фильмы, у которых изменились лайки,
+ * и остальные фильмы пользователей, поставивших или убравших эти лайки. Для них заново читаются только жанры,
+ * пользователи с лайками берутся из обратного индекса FilmLikeBitmapIndex, а в списках популярных фильмов жанров
+ * переставляются только эти фильмы: фильм, выпавший из списка, возвращается в него не раньше полного пересчета.
+ * Модель хранится в массивах, индексированных ID фильма и ID жанра; элемент списка популярных фильмов -
+ * число лайков и ID фильма, упакованные в один long, поэтому списки сортируются без компаратора и упаковки.
+ */
+@Slf4j
+@Service
+public class FilmSimilarityService implements FilmLikeListener {
+
+    private static final String PROGRAM_LEVEL = "FilmSimilarityService";
+
+    private static final int MAX_SIMILAR_FILMS = 100;
+
+    private static final int[] NO_GENRES = new int[0];
+
+    private static final long[] NO_FILMS = new long[0];
+
+    private static final int[][] NO_FILMS_GENRES = new int[0][];
+
+    private final FilmLikeBitmapIndex likeIndex;
+
+    private final FilmSimilarityStorage similarityStorage;
+
+    private final FilmStorage filmStorage;
+
+    private final int neighborsCount;
+
+    private final int maxFanOut;
+
+    private final int genreCandidates;
+
+    private final double genreWeight;
+
+    private final int fullRefreshEvery;
+
+    private final Set<Long> changedFilmsIds = ConcurrentHashMap.newKeySet();
+
+    private Model model;
+
+    private int refreshesSinceFull;
+
+    @Autowired
+    public FilmSimilarityService(FilmLikeBitmapIndex likeIndex, FilmSimilarityStorage similarityStorage,
+            FilmStorage filmStorage,
+            @Value("${filmorate.films.similarity.neighbors:20}") int neighborsCount,
+            @Value("${filmorate.films.similarity.max-fan-out:1000}") int maxFanOut,
+            @Value("${filmorate.films.similarity.genre-candidates:100}") int genreCandidates,
+            @Value("${filmorate.films.similarity.genre-weight:0.5}") double genreWeight,
+            @Value("${filmorate.films.similarity.full-refresh-every:60}") int fullRefreshEvery) {
+        this.likeIndex = likeIndex;
+        this.similarityStorage = similarityStorage;
+        this.filmStorage = filmStorage;
+        this.neighborsCount = neighborsCount;
+        this.maxFanOut = maxFanOut;
+        this.genreCandidates = genreCandidates;
+        this.genreWeight = genreWeight;
+        this.fullRefreshEvery = fullRefreshEvery;
+    }
+
+    public List<Film> getSimilarFilms(Long filmId, int limit) {
+        ValidationTool.checkId(filmId, PROGRAM_LEVEL, "Похожие фильмы не могут быть получены по некорректному ID:"
+                + filmId);
+        if (limit < 1 || limit > MAX_SIMILAR_FILMS) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Количество похожих фильмов должно быть от 1 до "
+                    + MAX_SIMILAR_FILMS);
+        }
+
+        filmStorage.getFilmById(filmId);
+
+        return filmStorage.getFilmsByIds(similarityStorage.getSimilarFilmsIds(filmId, limit));
+    }
+
+    @Override
+    public void onLikeAdded(long filmId, long userId) {
+        markChanged(filmId, userId);
+    }
+
+    @Override
+    public void onLikeRemoved(long filmId, long userId) {
+        markChanged(filmId, userId);
+    }
+
+    public void markFilmChanged(long filmId) {
+        changedFilmsIds.add(filmId);
+    }
+
+    /**
+     * Лайк меняет число совместных лайков фильма с остальными фильмами пользователя,
+     * поэтому к пересчету помечаются и они.
+     */
+    private void markChanged(long filmId, long userId) {
+        changedFilmsIds.add(filmId);
+        for (int otherFilmId : likeIndex.getLikedFilmsIds(userId, maxFanOut)) {
+            changedFilmsIds.add((long) otherFilmId);
+        }
+    }
+
+    /**
+     * Первый запуск и каждый full-refresh-every запуск пересчитывают все фильмы,
+     * остальные - только помеченные фильмы.
+     */
+    @Scheduled(initialDelayString = "${filmorate.films.similarity.initial-delay-ms:10000}",
+            fixedDelayString = "${filmorate.films.similarity.refresh-interval-ms:60000}")
+    public synchronized void refresh() {
+        boolean fullRefresh = model == null || refreshesSinceFull >= fullRefreshEvery;
+        long[] changed = drainChangedFilmsIds();
+        if (!fullRefresh && changed.length == 0) {
+            return;
+        }
+
+        long startedAt = System.nanoTime();
+        long[] filmsIds;
+        if (fullRefresh) {
+            model = buildModel();
+            filmsIds = model.filmsIds();
+        } else {
+            filmsIds = updateModel(changed);
+        }
+
+        List<FilmSimilarity> similarities = Arrays.stream(filmsIds)
+                .parallel()
+                .mapToObj(filmId -> computeSimilarities(filmId, model))
+                .flatMap(List::stream)
+                .toList();
+        similarityStorage.replaceSimilarities(filmsIds, similarities);
+
+        refreshesSinceFull = fullRefresh ? 1 : refreshesSinceFull + 1;
+        log.info(PROGRAM_LEVEL + ": {} пересчет похожих фильмов: фильмов {}, пар {}, {} мс",
+                fullRefresh ? "Полный" : "Частичный", filmsIds.length, similarities.size(),
+                (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    private long[] drainChangedFilmsIds() {
+        List<Long> drained = new ArrayList<>();
+        for (Iterator<Long> iterator = changedFilmsIds.iterator(); iterator.hasNext(); ) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private Model buildModel() {
+        Model newModel = new Model();
+        similarityStorage.forEachFilmGenres(newModel::putGenres);
+
+        int[] likesByFilmId = new int[newModel.genresByFilmId.length];
+        int[] filmsCountByGenreId = new int[0];
+        for (int filmId = 0; filmId < newModel.genresByFilmId.length; filmId++) {
+            int[] genres = newModel.genresByFilmId[filmId];
+            if (genres == null) {
+                continue;
+            }
+            likesByFilmId[filmId] = likesCount(filmId);
+            for (int genreId : genres) {
+                if (genreId >= filmsCountByGenreId.length) {
+                    filmsCountByGenreId = Arrays.copyOf(filmsCountByGenreId, genreId + 1);
+                }
+                filmsCountByGenreId[genreId]++;
+            }
+        }
+
+        long[][] filmsByGenreId = new long[filmsCountByGenreId.length][];
+        for (int genreId = 0; genreId < filmsByGenreId.length; genreId++) {
+            filmsByGenreId[genreId] = new long[filmsCountByGenreId[genreId]];
+        }
+        int[] filled = new int[filmsCountByGenreId.length];
+        for (int filmId = 0; filmId < newModel.genresByFilmId.length; filmId++) {
+            int[] genres = newModel.genresByFilmId[filmId];
+            if (genres == null) {
+                continue;
+            }
+            for (int genreId : genres) {
+                filmsByGenreId[genreId][filled[genreId]++] = rankKey(likesByFilmId[filmId], filmId);
+            }
+        }
+        newModel.popularByGenreId = new long[filmsByGenreId.length][];
+        for (int genreId = 0; genreId < filmsByGenreId.length; genreId++) {
+            long[] films = filmsByGenreId[genreId];
+            Arrays.sort(films);
+            int count = Math.min(genreCandidates, films.length);
+            long[] popular = new long[count];
+            for (int i = 0; i < count; i++) {
+                popular[i] = films[films.length - 1 - i];
+            }
+            newModel.popularByGenreId[genreId] = popular;
+        }
+        return newModel;
+    }
+
+    /**
+     * Перечитывает жанры измененных фильмов и переставляет их в списках популярных фильмов жанров
+     * по текущему числу лайков. Возвращает ID существующих фильмов из changed.
+     */
+    private long[] updateModel(long[] changed) {
+        long[] filmsIds = new long[changed.length];
+        int[] count = {0};
+        similarityStorage.forEachFilmGenresByIds(changed, (filmId, genres) -> {
+            int index = filmIndex(filmId);
+            int[] oldGenres = model.genresOf(index);
+            model.putGenres(filmId, genres);
+            long key = rankKey(likesCount(filmId), index);
+            if (oldGenres != null) {
+                for (int genreId : oldGenres) {
+                    model.removePopular(genreId, index);
+                }
+            }
+            for (int genreId : genres) {
+                model.removePopular(genreId, index);
+                model.addPopular(genreId, key, genreCandidates);
+            }
+            filmsIds[count[0]++] = filmId;
+        });
+        return Arrays.copyOf(filmsIds, count[0]);
+    }
+
+    private List<FilmSimilarity> computeSimilarities(long filmId, Model model) {
+        int[] genres = Objects.requireNonNullElse(model.genresOf(filmId), NO_GENRES);
+
+        LongIntCounter coLikes = new LongIntCounter(256);
+        for (int userId : likeIndex.getLikersIds(filmId, maxFanOut)) {
+            for (int otherFilmId : likeIndex.getLikedFilmsIds(userId, maxFanOut)) {
+                if (otherFilmId != filmId) {
+                    coLikes.increment(otherFilmId);
+                }
+            }
+        }
+        for (int genreId : genres) {
+            for (long key : model.popularOf(genreId)) {
+                long otherFilmId = filmIdOf(key);
+                if (otherFilmId != filmId) {
+                    coLikes.add(otherFilmId, 0);
+                }
+            }
+        }
+
+        int likesCount = likesCount(filmId);
+        PriorityQueue<FilmSimilarity> best = new PriorityQueue<>(Comparator.comparingDouble(FilmSimilarity::score)
+                .thenComparing(FilmSimilarity::similarFilmId, Comparator.reverseOrder()));
+        coLikes.forEach((otherFilmId, commonLikes) -> {
+            int[] otherGenres = model.genresOf(otherFilmId);
+            if (otherGenres == null) {
+                return;
+            }
+            int otherLikesCount = likesCount(otherFilmId);
+            double likesScore = (commonLikes == 0)
+                    ? 0.0
+                    : commonLikes / Math.sqrt((double) likesCount * otherLikesCount);
+            double score = likesScore + genreWeight * jaccard(genres, otherGenres);
+            if (score <= 0.0) {
+                return;
+            }
+            if (best.size() < neighborsCount) {
+                best.add(new FilmSimilarity(filmId, otherFilmId, score));
+            } else if (score > best.peek().score()
+                    || (score == best.peek().score() && otherFilmId < best.peek().similarFilmId())) {
+                best.poll();
+                best.add(new FilmSimilarity(filmId, otherFilmId, score));
+            }
+        });
+        return List.copyOf(best);
+    }
+
+    private int likesCount(long filmId) {
+        return likeIndex.getLikesCount(filmId);
+    }
+
+    private static int filmIndex(long filmId) {
+        if (filmId < 0 || filmId >= Integer.MAX_VALUE) {
+            throw new InternalServerException(PROGRAM_LEVEL + ": ID фильма " + filmId
+                    + " не помещается в модель похожих фильмов, индексированную int");
+        }
+        return (int) filmId;
+    }
+
+    /**
+     * Ключ списка популярных фильмов: больше лайков - больше ключ, при равенстве больше ключ у меньшего ID.
+     */
+    private static long rankKey(int likes, int filmId) {
+        return ((long) likes << 32) | (Integer.MAX_VALUE - filmId);
+    }
+
+    private static long filmIdOf(long rankKey) {
+        return Integer.MAX_VALUE - (int) rankKey;
+    }
+
+    /**
+     * Мера Жаккара для двух отсортированных массивов ID жанров.
+     */
+    private static double jaccard(int[] genres, int[] otherGenres) {
+        if (genres.length == 0 || otherGenres.length == 0) {
+            return 0.0;
+        }
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < genres.length && j < otherGenres.length) {
+            if (genres[i] < otherGenres[j]) {
+                i++;
+            } else if (genres[i] > otherGenres[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        return (double) common / (genres.length + otherGenres.length - common);
+    }
+
+    /**
+     * Жанры фильмов (индекс - ID фильма, null - фильма нет) и списки популярных фильмов жанров
+     * (индекс - ID жанра, ключи rankKey по убыванию). Изменяется только внутри refresh().
+     */
+    private static final class Model {
+        private int[][] genresByFilmId = NO_FILMS_GENRES;
+        private long[][] popularByGenreId = new long[0][];
+
+        void putGenres(long filmId, int[] genres) {
+            int index = filmIndex(filmId);
+            if (index >= genresByFilmId.length) {
+                genresByFilmId = Arrays.copyOf(genresByFilmId, Math.max(index + 1, genresByFilmId.length * 3 / 2));
+            }
+            genresByFilmId[index] = genres;
+        }
+
+        int[] genresOf(long filmId) {
+            return (filmId >= 0 && filmId < genresByFilmId.length) ? genresByFilmId[(int) filmId] : null;
+        }
+
+        long[] filmsIds() {
+            int count = 0;
+            for (int[] genres : genresByFilmId) {
+                if (genres != null) {
+                    count++;
+                }
+            }
+            long[] filmsIds = new long[count];
+            int offset = 0;
+            for (int filmId = 0; filmId < genresByFilmId.length; filmId++) {
+                if (genresByFilmId[filmId] != null) {
+                    filmsIds[offset++] = filmId;
+                }
+            }
+            return filmsIds;
+        }
+
+        long[] popularOf(int genreId) {
+            return (genreId < popularByGenreId.length && popularByGenreId[genreId] != null)
+                    ? popularByGenreId[genreId]
+                    : NO_FILMS;
+        }
+
+        void removePopular(int genreId, int filmId) {
+            long[] popular = popularOf(genreId);
+            for (int i = 0; i < popular.length; i++) {
+                if (filmIdOf(popular[i]) == filmId) {
+                    long[] updated = new long[popular.length - 1];
+                    System.arraycopy(popular, 0, updated, 0, i);
+                    System.arraycopy(popular, i + 1, updated, i, updated.length - i);
+                    popularByGenreId[genreId] = updated;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Вставка с сохранением порядка по убыванию; в полном списке ключ меньше последнего не вставляется.
+         */
+        void addPopular(int genreId, long key, int capacity) {
+            if (genreId >= popularByGenreId.length) {
+                popularByGenreId = Arrays.copyOf(popularByGenreId, genreId + 1);
+            }
+            long[] popular = popularOf(genreId);
+            int position = 0;
+            while (position < popular.length && popular[position] > key) {
+                position++;
+            }
+            if (position >= capacity) {
+                return;
+            }
+            int size = Math.min(popular.length + 1, capacity);
+            long[] updated = new long[size];
+            System.arraycopy(popular, 0, updated, 0, position);
+            updated[position] = key;
+            System.arraycopy(popular, position, updated, position + 1, size - position - 1);
+            popularByGenreId[genreId] = updated;
+        }
+    }
+}
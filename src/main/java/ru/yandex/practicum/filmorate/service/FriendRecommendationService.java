@@ -0,0 +1,197 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Рекомендации друзей: пользователи на расстоянии двух шагов, упорядоченные по количеству общих друзей.
+ * Обход ограничен: у пользователя и у каждого его друга учитывается не более max-fan-out друзей,
+ * выбранных случайно, а не по наименьшим ID.
+ * Подсчет выполняется в ForkJoinPool частями по split-threshold ребер, поэтому список друзей
+ * одного популярного пользователя делится между потоками. Результат кэшируется для каждого пользователя
+ * и сбрасывается при изменении его списка друзей; рекомендации, зависящие от друзей его друзей,
+ * обновляются по истечении времени жизни кэша.
+ */
+@Slf4j
+@Service
+public class FriendRecommendationService {
+
+    static final int MAX_RECOMMENDATIONS = 100;
+
+    private final UserStorage userStorage;
+
+    private final int maxFanOut;
+
+    private final int splitThreshold;
+
+    private final ForkJoinPool pool;
+
+    private final Cache<Long, long[]> recommendationsByUserId;
+
+    @Autowired
+    public FriendRecommendationService(UserStorage userStorage,
+            @Value("${filmorate.users.recommendations.max-fan-out:1000}") int maxFanOut,
+            @Value("${filmorate.users.recommendations.split-threshold:8192}") int splitThreshold,
+            @Value("${filmorate.users.recommendations.parallelism:0}") int parallelism,
+            @Value("${filmorate.users.recommendations.cache.maximum-size:10000}") long cacheMaximumSize,
+            @Value("${filmorate.users.recommendations.cache.expire-after-write-seconds:300}") long expireAfterWrite) {
+        this.userStorage = userStorage;
+        this.maxFanOut = maxFanOut;
+        this.splitThreshold = splitThreshold;
+        this.pool = new ForkJoinPool((parallelism > 0) ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.recommendationsByUserId = Caffeine.newBuilder()
+                .maximumSize(cacheMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWrite))
+                .build();
+    }
+
+    @PreDestroy
+    public void stop() {
+        pool.shutdown();
+    }
+
+    public List<User> getRecommendations(long userId, int limit) {
+        long[] recommendedIds = recommendationsByUserId.get(userId, this::computeRecommendedIds);
+        if (recommendedIds.length == 0) {
+            return List.of();
+        }
+        List<Long> usersIds = new ArrayList<>(Math.min(limit, recommendedIds.length));
+        for (int i = 0; i < recommendedIds.length && i < limit; i++) {
+            usersIds.add(recommendedIds[i]);
+        }
+
+        // сохраняем порядок рекомендаций
+        Map<Long, User> usersById = new HashMap<>();
+        for (User user : userStorage.getUsersByIds(usersIds)) {
+            usersById.put(user.getId(), user);
+        }
+        List<User> users = new ArrayList<>(usersIds.size());
+        for (Long id : usersIds) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    public void invalidate(long userId) {
+        recommendationsByUserId.invalidate(userId);
+    }
+
+    private long[] computeRecommendedIds(long userId) {
+        long[] friendsIds = userStorage.getFriendsIdsByUsersIds(List.of(userId), maxFanOut)
+                .getOrDefault(userId, new long[0]);
+        if (friendsIds.length == 0) {
+            return new long[0];
+        }
+        List<Long> traversedFriendsIds = new ArrayList<>(friendsIds.length);
+        for (long friendId : friendsIds) {
+            traversedFriendsIds.add(friendId);
+        }
+
+        Map<Long, long[]> friendsOfFriends = userStorage.getFriendsIdsByUsersIds(traversedFriendsIds, maxFanOut);
+        int edges = 0;
+        for (long[] row : friendsOfFriends.values()) {
+            edges += row.length;
+        }
+        long[] candidates = new long[edges];
+        int offset = 0;
+        for (long[] row : friendsOfFriends.values()) {
+            System.arraycopy(row, 0, candidates, offset, row.length);
+            offset += row.length;
+        }
+
+        LongIntCounter mutualFriends = pool.invoke(
+                new CountTask(candidates, 0, candidates.length, userId, friendsIds, splitThreshold));
+        long[] recommendedIds = (friendsIds.length < maxFanOut)
+                ? mutualFriends.topKeys(MAX_RECOMMENDATIONS)
+                : topKeysExceptFriends(userId, mutualFriends);
+        log.debug("FriendRecommendationService: Для User с ID: {} просмотрено ребер: {}, кандидатов: {}",
+                userId, edges, mutualFriends.size());
+        return recommendedIds;
+    }
+
+    /**
+     * Если список друзей пользователя обрезан до max-fan-out, друзья вне выборки не исключены при подсчете.
+     * Они убираются из лучших кандидатов запросом по этим кандидатам; окно кандидатов удваивается,
+     * пока не наберется MAX_RECOMMENDATIONS рекомендаций или кандидаты не закончатся.
+     */
+    private long[] topKeysExceptFriends(long userId, LongIntCounter mutualFriends) {
+        int window = MAX_RECOMMENDATIONS;
+        while (true) {
+            long[] topKeys = mutualFriends.topKeys(window);
+            long[] friendsIds = userStorage.getFriendsIdsAmong(userId, topKeys);
+            long[] recommendedIds = new long[Math.min(topKeys.length, MAX_RECOMMENDATIONS)];
+            int size = 0;
+            for (int i = 0; i < topKeys.length && size < recommendedIds.length; i++) {
+                if (Arrays.binarySearch(friendsIds, topKeys[i]) < 0) {
+                    recommendedIds[size++] = topKeys[i];
+                }
+            }
+            if (size == MAX_RECOMMENDATIONS || topKeys.length == mutualFriends.size()) {
+                return Arrays.copyOf(recommendedIds, size);
+            }
+            window *= 2;
+        }
+    }
+
+    /**
+     * Подсчет вхождений кандидатов в диапазоне [from, to) массива, без самого пользователя и его друзей.
+     */
+    private static final class CountTask extends RecursiveTask<LongIntCounter> {
+        private final long[] candidates;
+        private final int from;
+        private final int to;
+        private final long userId;
+        private final long[] sortedFriendsIds;
+        private final int splitThreshold;
+
+        CountTask(long[] candidates, int from, int to, long userId, long[] sortedFriendsIds, int splitThreshold) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.userId = userId;
+            this.sortedFriendsIds = sortedFriendsIds;
+            this.splitThreshold = splitThreshold;
+        }
+
+        @Override
+        protected LongIntCounter compute() {
+            if (to - from <= splitThreshold) {
+                LongIntCounter counter = new LongIntCounter(to - from);
+                for (int i = from; i < to; i++) {
+                    long candidateId = candidates[i];
+                    if (candidateId != userId && Arrays.binarySearch(sortedFriendsIds, candidateId) < 0) {
+                        counter.increment(candidateId);
+                    }
+                }
+                return counter;
+            }
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(candidates, from, middle, userId, sortedFriendsIds, splitThreshold);
+            CountTask right = new CountTask(candidates, middle, to, userId, sortedFriendsIds, splitThreshold);
+            left.fork();
+            LongIntCounter counter = right.compute();
+            LongIntCounter leftCounter = left.join();
+            if (leftCounter.size() > counter.size()) {
+                leftCounter.addAll(counter);
+                return leftCounter;
+            }
+            counter.addAll(leftCounter);
+            return counter;
+        }
+    }
+}
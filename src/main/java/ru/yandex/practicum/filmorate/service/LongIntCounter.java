@@ -0,0 +1,183 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.Arrays;
+
+/**
+ * Счетчик long -> int на открытой адресации с линейным пробированием, без упаковки ключей и значений.
+ * Не потокобезопасен: каждый поток считает в свой экземпляр, затем счетчики объединяются через addAll.
+ */
+final class LongIntCounter {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+
+    private int[] counts;
+
+    private int size;
+
+    LongIntCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize * 2, 16) - 1) << 1;
+        this.keys = new long[capacity];
+        this.counts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void increment(long key) {
+        add(key, 1);
+    }
+
+    void add(long key, int delta) {
+        int mask = keys.length - 1;
+        int idx = mix(key) & mask;
+        while (keys[idx] != EMPTY) {
+            if (keys[idx] == key) {
+                counts[idx] += delta;
+                return;
+            }
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = key;
+        counts[idx] = delta;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        int idx = mix(key) & mask;
+        while (keys[idx] != EMPTY) {
+            if (keys[idx] == key) {
+                return counts[idx];
+            }
+            idx = (idx + 1) & mask;
+        }
+        return 0;
+    }
+
+    void forEach(LongIntConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    void addAll(LongIntCounter other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Не более limit ключей с наибольшими значениями: по убыванию значения, при равенстве - по возрастанию ключа.
+     */
+    long[] topKeys(int limit) {
+        int k = Math.min(limit, size);
+        if (k <= 0) {
+            return new long[0];
+        }
+        // минимальная куча из k лучших элементов, корень - худший из них
+        long[] heapKeys = new long[k];
+        int[] heapCounts = new int[k];
+        int heapSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY) {
+                continue;
+            }
+            if (heapSize < k) {
+                heapKeys[heapSize] = keys[i];
+                heapCounts[heapSize] = counts[i];
+                siftUp(heapKeys, heapCounts, heapSize++);
+            } else if (isBetter(counts[i], keys[i], heapCounts[0], heapKeys[0])) {
+                heapKeys[0] = keys[i];
+                heapCounts[0] = counts[i];
+                siftDown(heapKeys, heapCounts, heapSize);
+            }
+        }
+
+        long[] result = new long[k];
+        for (int i = k - 1; i >= 0; i--) {
+            result[i] = heapKeys[0];
+            heapKeys[0] = heapKeys[i];
+            heapCounts[0] = heapCounts[i];
+            siftDown(heapKeys, heapCounts, i);
+        }
+        return result;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                add(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    private static boolean isBetter(int count, long key, int otherCount, long otherKey) {
+        return (count != otherCount) ? count > otherCount : key < otherKey;
+    }
+
+    private static void siftUp(long[] heapKeys, int[] heapCounts, int idx) {
+        while (idx > 0) {
+            int parent = (idx - 1) >>> 1;
+            if (!isBetter(heapCounts[parent], heapKeys[parent], heapCounts[idx], heapKeys[idx])) {
+                return;
+            }
+            swap(heapKeys, heapCounts, parent, idx);
+            idx = parent;
+        }
+    }
+
+    private static void siftDown(long[] heapKeys, int[] heapCounts, int heapSize) {
+        int idx = 0;
+        while (true) {
+            int worst = idx;
+            int left = 2 * idx + 1;
+            int right = left + 1;
+            if (left < heapSize && isBetter(heapCounts[worst], heapKeys[worst], heapCounts[left], heapKeys[left])) {
+                worst = left;
+            }
+            if (right < heapSize && isBetter(heapCounts[worst], heapKeys[worst], heapCounts[right], heapKeys[right])) {
+                worst = right;
+            }
+            if (worst == idx) {
+                return;
+            }
+            swap(heapKeys, heapCounts, worst, idx);
+            idx = worst;
+        }
+    }
+
+    private static void swap(long[] heapKeys, int[] heapCounts, int i, int j) {
+        long key = heapKeys[i];
+        heapKeys[i] = heapKeys[j];
+        heapKeys[j] = key;
+        int count = heapCounts[i];
+        heapCounts[i] = heapCounts[j];
+        heapCounts[j] = count;
+    }
+
+    @FunctionalInterface
+    interface LongIntConsumer {
+        void accept(long key, int count);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -15,7 +15,7 @@ public class RatingService {
 
     private final RatingStorage mpaRatingStorage;
 
-    private final static String PROGRAM_LEVEL = "RatingService";
+    private static final String PROGRAM_LEVEL = "RatingService";
 
     @Autowired
     public RatingService(RatingStorage mpaRatingStorage) {
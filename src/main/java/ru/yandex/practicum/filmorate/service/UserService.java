@@ -3,14 +3,15 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dao.graph.FriendGraph;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Page;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.validation.ValidationTool;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 
 @Slf4j
@@ -18,15 +19,40 @@ import java.util.stream.Collectors;
 public class UserService {
     private final UserStorage userStorage;
 
-    private final static String PROGRAM_LEVEL = "UserService";
+    private final Optional<FriendGraph> friendGraph;
+
+    private final FriendRecommendationService recommendationService;
+
+    private static final String PROGRAM_LEVEL = "UserService";
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    private static final int MAX_PAGE_SIZE = 1000;
 
     @Autowired
-    public UserService(UserStorage userStorage) {
+    public UserService(UserStorage userStorage, Optional<FriendGraph> friendGraph,
+                       FriendRecommendationService recommendationService) {
         this.userStorage = userStorage;
+        this.friendGraph = friendGraph;
+        this.recommendationService = recommendationService;
     }
 
     public List<User> getAllUsers() {
-        return List.copyOf(userStorage.getAllUsers());
+        return userStorage.getAllUsers();
+    }
+
+    public Page<User> getUsersPage(Long afterId, Integer limit) {
+        int pageSize = (limit == null) ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+        if (afterId != null && afterId < 0L) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Курсор страницы не может быть отрицательным");
+        }
+
+        List<User> users = userStorage.getUsersPage(afterId, pageSize);
+        Long nextCursor = (users.size() == pageSize) ? users.getLast().getId() : null;
+        return new Page<>(users, nextCursor);
     }
 
     public User getUserById(Long id) {
@@ -86,12 +112,9 @@ public class UserService {
     public void addFriend(Long userId, Long friendId) {
         ValidationTool.checkId(userId, friendId, PROGRAM_LEVEL, "Запрос на добавление друга, ID некорректен");
 
-        User user = userStorage.getUserById(userId);
-        User friend = userStorage.getUserById(friendId);
-
-        Set<Long> userFriendsIdsSet = userStorage.getUserFriendsIdsById(userId);
-        if (!(userFriendsIdsSet.contains(friendId))) {
-            userStorage.addFriend(userId, friendId);
+        if (userStorage.addFriend(userId, friendId)) {
+            friendGraph.ifPresent(graph -> graph.addFriend(userId, friendId));
+            recommendationService.invalidate(userId);
             log.info("Друг успешно добавлен");
         } else {
             log.info("Друг был добавлен ранее");
@@ -102,12 +125,9 @@ public class UserService {
 
         ValidationTool.checkId(userId, friendId, PROGRAM_LEVEL, "Друг не может быть удален ID = null");
 
-        User user = userStorage.getUserById(userId);
-        User friend = userStorage.getUserById(friendId);
-
-        Set<Long> userFriendsIds = userStorage.getUserFriendsIdsById(userId);
-        if (userFriendsIds.contains(friendId)) {
-            userStorage.removeFriend(userId, friendId);
+        if (userStorage.removeFriend(userId, friendId)) {
+            friendGraph.ifPresent(graph -> graph.removeFriend(userId, friendId));
+            recommendationService.invalidate(userId);
             log.info("Друг успешно удален");
         } else {
             log.info("друг не может быть удален - отсутствует в списке друзей");
@@ -125,27 +145,49 @@ public class UserService {
         return List.copyOf(users);
     }
 
-    public List<User> getAllCommonFriendsByIds(Long userId, Long anotherUserId) {
-        ValidationTool.checkId(userId, anotherUserId, PROGRAM_LEVEL, "Cписок общих друзей " +
-                "не может быть получен, ID некорректен");
+    public List<User> getFriendRecommendations(Long userId, int limit) {
+        ValidationTool.checkId(userId, PROGRAM_LEVEL, "Рекомендации друзей не могут быть получены по некорректному ID:"
+                + userId);
+        if (limit < 1 || limit > FriendRecommendationService.MAX_RECOMMENDATIONS) {
+            throw new ValidationException(PROGRAM_LEVEL + ": Количество рекомендаций должно быть от 1 до "
+                    + FriendRecommendationService.MAX_RECOMMENDATIONS);
+        }
 
         userStorage.getUserById(userId);
-        userStorage.getUserById(anotherUserId);
 
-        Set<Long> setOfUserFriendsIds = userStorage.getUserFriendsIdsById(userId);
-        Set<Long> setOfAnotherUserFriendsIds = userStorage.getUserFriendsIdsById(anotherUserId);
+        List<User> recommendations = recommendationService.getRecommendations(userId, limit);
+        log.info("Список рекомендаций друзей пользователя успешно создан");
+        return recommendations;
+    }
 
+    public List<User> getAllCommonFriendsByIds(Long userId, Long anotherUserId) {
+        ValidationTool.checkId(userId, anotherUserId, PROGRAM_LEVEL, "Cписок общих друзей " +
+                "не может быть получен, ID некорректен");
 
-        if (setOfUserFriendsIds == null || setOfAnotherUserFriendsIds == null) {
-            log.warn("UserService: Не удалось получить объекты User по ID - не найдены в приложении");
-            throw new NotFoundException("UserService: объекты User не найдены в приложении");
+        List<User> commonFriends;
+        if (friendGraph.isPresent()) {
+            long[] commonFriendsIds = friendGraph.get().getCommonFriendsIds(userId, anotherUserId);
+            if (commonFriendsIds.length > 0) {
+                commonFriends = userStorage.getUsersByIds(Arrays.stream(commonFriendsIds).boxed().toList());
+            } else {
+                // пустой результат проверяется только на существование пользователей, без повторного соединения
+                checkUsersExist(userId, anotherUserId);
+                commonFriends = List.of();
+            }
+        } else {
+            commonFriends = userStorage.getCommonFriends(userId, anotherUserId);
         }
-
-        Set<Long> resultOfIntersection = setOfUserFriendsIds.stream()
-                .filter(setOfAnotherUserFriendsIds::contains)
-                .collect(Collectors.toSet());
-        List<User> commonFriends = userStorage.getUsersByIdSet(resultOfIntersection);
         log.info("Список всех общих друзей пользователей успешно создан");
         return List.copyOf(commonFriends);
     }
+
+    private void checkUsersExist(Long userId, Long anotherUserId) {
+        Set<Long> existingUsersIds = userStorage.getExistingUsersIds(List.of(userId, anotherUserId));
+        for (Long id : List.of(userId, anotherUserId)) {
+            if (!existingUsersIds.contains(id)) {
+                log.warn(PROGRAM_LEVEL + ": Не удалось получить объект User по его ID - не найден в приложении");
+                throw new NotFoundException(PROGRAM_LEVEL + ": User c ID: " + id + " не найден в приложении");
+            }
+        }
+    }
 }
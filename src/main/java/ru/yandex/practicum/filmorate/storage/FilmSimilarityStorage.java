@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ru.yandex.practicum.filmorate.model.FilmSimilarity;
+
+import java.util.List;
+
+public interface FilmSimilarityStorage {
+
+    List<Long> getSimilarFilmsIds(Long filmId, int limit);
+
+    void forEachFilmGenres(FilmGenresConsumer consumer);
+
+    void forEachFilmGenresByIds(long[] filmsIds, FilmGenresConsumer consumer);
+
+    void replaceSimilarities(long[] filmsIds, List<FilmSimilarity> similarities);
+
+    @FunctionalInterface
+    interface FilmGenresConsumer {
+        void accept(long filmId, int[] genresIds);
+    }
+}
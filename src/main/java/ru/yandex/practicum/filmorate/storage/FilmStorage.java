@@ -1,22 +1,44 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     List<Film> getAllFilms();
 
+    List<Film> getFilmsPage(Long afterId, int limit);
+
+    void streamAllFilms(Consumer<Film> consumer);
+
     Film getFilmById(Long filmId);
 
+    List<Film> getFilmsByIds(List<Long> filmsIds);
+
+    Set<Long> getExistingFilmsIds(Collection<Long> filmsIds);
+
     Film create(Film film);
 
+    List<Film> createAll(List<Film> films);
+
     Film update(Film film);
 
     void addLike(Long filmId, Long userId);
 
     void removeLike(Long filmId, Long userId);
 
+    boolean[] addLikes(List<FilmLike> likes);
+
+    boolean[] removeLikes(List<FilmLike> likes);
+
+    Set<FilmLike> getExistingLikes(Collection<FilmLike> likes);
+
     List<Film> getTopFilms(int limit);
+
+    List<Film> getTopFilms(int limit, Integer genreId, Integer year);
 }
@@ -2,27 +2,39 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public interface UserStorage {
 
     List<User> getAllUsers();
 
+    List<User> getUsersPage(Long afterId, int limit);
+
     User getUserById(Long userId);
 
     List<User> getAllFriendsById(Long userId);
 
-    List<User> getUsersByIdSet(Set<Long> ids);
+    List<User> getCommonFriends(Long userId, Long anotherUserId);
+
+    List<User> getUsersByIds(List<Long> usersIds);
+
+    Set<Long> getExistingUsersIds(Collection<Long> usersIds);
 
     Set<Long> getUserFriendsIdsById(Long userId);
 
+    Map<Long, long[]> getFriendsIdsByUsersIds(Collection<Long> usersIds, int limitPerUser);
+
+    long[] getFriendsIdsAmong(Long userId, long[] candidatesIds);
+
     User create(User user);
 
     User update(User user);
 
-    void addFriend(Long userId, Long friendId);
+    boolean addFriend(Long userId, Long friendId);
 
-    void removeFriend(Long userId, Long friendId);
+    boolean removeFriend(Long userId, Long friendId);
 
 }
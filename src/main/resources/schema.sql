@@ -15,9 +15,20 @@ CREATE TABLE IF NOT EXISTS films (
   release_date DATE,
   duration INT,
   mpa_rating_id INT,
+  like_count BIGINT DEFAULT 0 NOT NULL,
   FOREIGN KEY (mpa_rating_id) REFERENCES mpa_rating(mpa_rating_id)
 );
 
+ALTER TABLE films ADD COLUMN IF NOT EXISTS like_count BIGINT DEFAULT 0 NOT NULL;
+
+CREATE TABLE IF NOT EXISTS schema_backfill (
+  name VARCHAR(100) PRIMARY KEY
+);
+
+CREATE INDEX IF NOT EXISTS idx_films_like_count ON films (like_count DESC, id);
+
+CREATE INDEX IF NOT EXISTS idx_films_release_date ON films (release_date, like_count DESC, id);
+
 CREATE TABLE IF NOT EXISTS film_genre (
   film_id BIGINT,
   genre_id INT,
@@ -26,6 +37,8 @@ CREATE TABLE IF NOT EXISTS film_genre (
   FOREIGN KEY (genre_id) REFERENCES genres(genre_id)
 );
 
+CREATE INDEX IF NOT EXISTS idx_film_genre_genre_id ON film_genre (genre_id, film_id);
+
 CREATE TABLE IF NOT EXISTS users (
   id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
   name VARCHAR(100),
@@ -42,6 +55,8 @@ CREATE TABLE IF NOT EXISTS film_like (
   FOREIGN KEY (film_id) REFERENCES films(id)
 );
 
+CREATE INDEX IF NOT EXISTS idx_film_like_film_id ON film_like (film_id, user_id);
+
 CREATE TABLE IF NOT EXISTS user_friend (
   user_id BIGINT,
   friend_id BIGINT,
@@ -49,3 +64,16 @@ CREATE TABLE IF NOT EXISTS user_friend (
   FOREIGN KEY (user_id) REFERENCES users(id),
   FOREIGN KEY (friend_id) REFERENCES users(id)
 );
+
+CREATE INDEX IF NOT EXISTS idx_user_friend_friend_id ON user_friend (friend_id, user_id);
+
+CREATE TABLE IF NOT EXISTS film_similarity (
+  film_id BIGINT,
+  similar_film_id BIGINT,
+  score DOUBLE PRECISION NOT NULL,
+  PRIMARY KEY (film_id, similar_film_id),
+  FOREIGN KEY (film_id) REFERENCES films(id),
+  FOREIGN KEY (similar_film_id) REFERENCES films(id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_film_similarity_score ON film_similarity (film_id, score DESC, similar_film_id);
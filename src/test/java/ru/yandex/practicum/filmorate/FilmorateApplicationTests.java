@@ -1,5 +1,8 @@
 package ru.yandex.practicum.filmorate;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,25 +10,52 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dao.graph.FriendGraph;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikeBitmapIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.dao.jdbc.JdbcQueryMetrics;
+import ru.yandex.practicum.filmorate.dao.reference.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.dao.repositories.CachingFilmStorage;
 import ru.yandex.practicum.filmorate.dao.repositories.FilmDbStorage;
+import ru.yandex.practicum.filmorate.dao.repositories.FilmLikeCountChecker;
+import ru.yandex.practicum.filmorate.dao.repositories.FilmSimilarityDbStorage;
 import ru.yandex.practicum.filmorate.dao.repositories.GenreDbStorage;
 import ru.yandex.practicum.filmorate.dao.repositories.RatingDbStorage;
 import ru.yandex.practicum.filmorate.dao.repositories.UserDbStorage;
-import ru.yandex.practicum.filmorate.dao.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.dao.mappers.FilmHydrator;
 import ru.yandex.practicum.filmorate.dao.mappers.GenreRowMapper;
 import ru.yandex.practicum.filmorate.dao.mappers.RatingRowMapper;
 import ru.yandex.practicum.filmorate.dao.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Rating;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmRecommendationService;
+import ru.yandex.practicum.filmorate.service.FilmSimilarityService;
+import ru.yandex.practicum.filmorate.service.FriendRecommendationService;
 import ru.yandex.practicum.filmorate.service.RatingService;
+import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -34,13 +64,26 @@ import static org.junit.jupiter.api.Assertions.*;
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @Import({UserDbStorage.class, UserRowMapper.class, GenreDbStorage.class, GenreRowMapper.class,
-        RatingDbStorage.class, RatingRowMapper.class, FilmDbStorage.class, FilmRowMapper.class,
-        RatingService.class})
+        RatingDbStorage.class, RatingRowMapper.class, FilmDbStorage.class, FilmHydrator.class,
+        RatingService.class, FilmPopularityIndex.class, FilmLikeCountChecker.class,
+        CachingFilmStorage.class, ReferenceDataRegistry.class, FilmLikeBitmapIndex.class,
+        FilmSimilarityDbStorage.class, FilmSimilarityService.class, FilmSearchIndex.class})
+// индексы обновляются после фиксации транзакции, поэтому тесты работают без общей откатываемой транзакции:
+// база каждого теста пересоздается через @DirtiesContext
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
 class FilmorateApplicationTests {
     private final UserDbStorage userDbStorage;
     private final FilmDbStorage filmDbStorage;
     private final GenreDbStorage genreDbStorage;
     private final RatingDbStorage ratingDbStorage;
+    private final FilmLikeCountChecker likeCountChecker;
+    private final CachingFilmStorage cachingFilmStorage;
+    private final FilmLikeBitmapIndex likeBitmapIndex;
+    private final FilmSimilarityService filmSimilarityService;
+    private final FilmSimilarityDbStorage filmSimilarityDbStorage;
+    private final FilmSearchIndex filmSearchIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
 
     @BeforeEach
     void updateDb() {
@@ -276,4 +319,663 @@ class FilmorateApplicationTests {
         assertEquals(2, topFilms.get(1).getId());
         assertEquals(1, topFilms.get(2).getId());
     }
+
+    @Test
+    @DirtiesContext
+    public void testRemoveLikeUpdatesTopFilms() {
+        filmDbStorage.create(newFilm("Film name 2", "Description", LocalDate.of(2012, 2, 5), new Rating(2, "PG")));
+
+        filmDbStorage.addLike(2L, 1L);
+        List<Film> topFilms = filmDbStorage.getTopFilms(1);
+        assertEquals(1, topFilms.size());
+        assertEquals(2, topFilms.get(0).getId());
+
+        filmDbStorage.removeLike(2L, 1L);
+        filmDbStorage.addLike(1L, 1L);
+        topFilms = filmDbStorage.getTopFilms(2);
+        assertEquals(2, topFilms.size());
+        assertEquals(1, topFilms.get(0).getId());
+        assertEquals(2, topFilms.get(1).getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testLikeCountConsistentWithFilmLikes() {
+        filmDbStorage.addLike(1L, 1L);
+        assertEquals(1L, jdbcTemplate.queryForObject("SELECT like_count FROM films WHERE id = 1", Long.class));
+        assertTrue(likeCountChecker.findInconsistentFilmsIds().isEmpty());
+
+        filmDbStorage.removeLike(1L, 1L);
+        assertEquals(0L, jdbcTemplate.queryForObject("SELECT like_count FROM films WHERE id = 1", Long.class));
+
+        jdbcTemplate.update("UPDATE films SET like_count = 5 WHERE id = 1");
+        assertEquals(List.of(1L), likeCountChecker.findInconsistentFilmsIds());
+        assertEquals(1, likeCountChecker.repair());
+        assertTrue(likeCountChecker.findInconsistentFilmsIds().isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testIndexesUpdatedAfterCommit() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.addLike(1L, 1L);
+            status.setRollbackOnly();
+        });
+        assertEquals(0, likeBitmapIndex.getLikesCount(1L));
+        assertEquals(0L, jdbcTemplate.queryForObject("SELECT like_count FROM films WHERE id = 1", Long.class));
+
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.addLike(1L, 1L);
+            assertEquals(0, likeBitmapIndex.getLikesCount(1L));
+        });
+        assertEquals(1, likeBitmapIndex.getLikesCount(1L));
+        assertEquals(List.of(1L), filmDbStorage.getTopFilms(1).stream().map(Film::getId).toList());
+
+        transaction.executeWithoutResult(status -> {
+            filmDbStorage.removeLikes(List.of(new FilmLike(1L, 1L)));
+            status.setRollbackOnly();
+        });
+        assertEquals(1, likeBitmapIndex.getLikesCount(1L));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testLikeCountBackfilledOnce() {
+        filmDbStorage.addLike(1L, 1L);
+        jdbcTemplate.update("UPDATE films SET like_count = 5 WHERE id = 1");
+        jdbcTemplate.update("DELETE FROM schema_backfill");
+        likeCountChecker.backfillOnStartup();
+        assertTrue(likeCountChecker.findInconsistentFilmsIds().isEmpty());
+
+        jdbcTemplate.update("UPDATE films SET like_count = 5 WHERE id = 1");
+        likeCountChecker.backfillOnStartup();
+        assertEquals(List.of(1L), likeCountChecker.findInconsistentFilmsIds());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetFilmsPage() {
+        Film newFilm = newFilm("Film name 2", "Description", LocalDate.of(2012, 2, 5), new Rating(2, "PG"),
+                new Genre(1, "Комедия"));
+        filmDbStorage.create(newFilm);
+        filmDbStorage.create(newFilm);
+
+        List<Film> firstPage = filmDbStorage.getFilmsPage(null, 2);
+        assertEquals(2, firstPage.size());
+        assertEquals(1, firstPage.get(0).getId());
+        assertEquals(2, firstPage.get(1).getId());
+        assertEquals(1, firstPage.get(1).getGenres().size());
+
+        List<Film> lastPage = filmDbStorage.getFilmsPage(firstPage.get(1).getId(), 2);
+        assertEquals(1, lastPage.size());
+        assertEquals(3, lastPage.get(0).getId());
+        assertTrue(filmDbStorage.getFilmsPage(3L, 2).isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetUsersPage() {
+        createUsers("Page", 1);
+
+        List<User> firstPage = userDbStorage.getUsersPage(null, 1);
+        assertEquals(1, firstPage.size());
+        assertEquals(1, firstPage.get(0).getId());
+
+        List<User> secondPage = userDbStorage.getUsersPage(1L, 5);
+        assertEquals(1, secondPage.size());
+        assertEquals(2, secondPage.get(0).getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testStreamAllFilms() {
+        Film newFilm = newFilm("Film name 2", "Description", LocalDate.of(2012, 2, 5), new Rating(2, "PG"),
+                new Genre(1, "Комедия"), new Genre(2, "Драма"));
+        filmDbStorage.create(newFilm);
+
+        List<Film> streamedFilms = new ArrayList<>();
+        filmDbStorage.streamAllFilms(streamedFilms::add);
+        assertEquals(2, streamedFilms.size());
+        assertEquals(1, streamedFilms.get(0).getId());
+        assertTrue(streamedFilms.get(0).getGenres().isEmpty());
+        assertEquals(2, streamedFilms.get(1).getId());
+        assertEquals(2, streamedFilms.get(1).getGenres().size());
+        assertEquals("Драма", streamedFilms.get(1).getGenres().getLast().getName());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetTopFilmsKeepsAllGenres() {
+        Film newFilm = newFilm("Film name 2", "Description", LocalDate.of(2012, 2, 5), new Rating(2, "PG"),
+                new Genre(1, "Комедия"), new Genre(2, "Драма"), new Genre(4, "Триллер"));
+        filmDbStorage.create(newFilm);
+        filmDbStorage.create(newFilm);
+        filmDbStorage.addLike(3L, 1L);
+
+        List<Film> topFilms = filmDbStorage.getTopFilms(2);
+        assertEquals(2, topFilms.size());
+        assertEquals(3, topFilms.get(0).getId());
+        assertEquals(3, topFilms.get(0).getGenres().size());
+        assertEquals(1, topFilms.get(1).getId());
+        assertTrue(topFilms.get(1).getGenres().isEmpty());
+
+        List<Film> films = filmDbStorage.getFilmsByIds(List.of(2L, 1L));
+        assertEquals(2, films.get(0).getId());
+        assertEquals(3, films.get(0).getGenres().size());
+        assertEquals(1, films.get(1).getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testCachingFilmStorageInvalidatesOnUpdate() {
+        Film film = cachingFilmStorage.getFilmById(1L);
+        assertSame(film, cachingFilmStorage.getFilmById(1L));
+        assertEquals(1, cachingFilmStorage.getCacheStats().hitCount());
+        assertEquals(1, cachingFilmStorage.getCacheStats().missCount());
+
+        Film newFilm = new Film(
+                1L,
+                "Film name 2",
+                film.getDescription(),
+                film.getReleaseDate(),
+                film.getDuration(),
+                film.getGenres(),
+                film.getMpa()
+        );
+        cachingFilmStorage.update(newFilm);
+        assertEquals("Film name 2", cachingFilmStorage.getFilmById(1L).getName());
+        assertEquals(2, cachingFilmStorage.getCacheStats().missCount());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFilmsShareReferenceDataInstances() {
+        Long filmId = filmDbStorage.create(newFilm("Film with genres", "Description", LocalDate.of(2010, 1, 1),
+                new Rating(3, null), new Genre(2, null))).getId();
+
+        Film storedFilm = filmDbStorage.getFilmById(filmId);
+        assertSame(genreDbStorage.getGenreById(2), storedFilm.getGenres().getFirst());
+        assertSame(ratingDbStorage.getRatingById(3), storedFilm.getMpa());
+        assertEquals("Драма", storedFilm.getGenres().getFirst().getName());
+
+        Film listedFilm = filmDbStorage.getFilmsByIds(List.of(filmId)).getFirst();
+        assertSame(storedFilm.getMpa(), listedFilm.getMpa());
+        assertSame(storedFilm.getGenres().getFirst(), listedFilm.getGenres().getFirst());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testCreateAllFilms() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            films.add(newFilm("Batch film " + i, "Description " + i, LocalDate.of(2000 + i, 1, 1),
+                    ratingDbStorage.getRatingById(i), genreDbStorage.getGenreById(i),
+                    genreDbStorage.getGenreById(i + 1)));
+        }
+
+        List<Film> createdFilms = filmDbStorage.createAll(films);
+
+        assertEquals(3, createdFilms.size());
+        for (int i = 0; i < createdFilms.size(); i++) {
+            Film storedFilm = filmDbStorage.getFilmById(createdFilms.get(i).getId());
+            assertEquals(films.get(i).getName(), storedFilm.getName());
+            assertEquals(films.get(i).getMpa(), storedFilm.getMpa());
+            assertEquals(List.copyOf(films.get(i).getGenres()), List.copyOf(storedFilm.getGenres()));
+        }
+        assertEquals(4, filmDbStorage.getAllFilms().size());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testAddLikesIsIdempotent() {
+        Long userId = userDbStorage.getAllUsers().getFirst().getId();
+        Long filmId = filmDbStorage.getAllFilms().getFirst().getId();
+        filmDbStorage.addLike(filmId, userId);
+
+        Long secondUserId = createUsers("Second", 1).getFirst();
+        boolean[] created = filmDbStorage.addLikes(List.of(
+                new FilmLike(filmId, userId),
+                new FilmLike(filmId, secondUserId),
+                new FilmLike(filmId, secondUserId)
+        ));
+
+        assertArrayEquals(new boolean[]{false, true, false}, created);
+        assertEquals(2L, jdbcTemplate.queryForObject(
+                "SELECT like_count FROM films WHERE id = ?", Long.class, filmId));
+        assertTrue(likeCountChecker.findInconsistentFilmsIds().isEmpty());
+        assertEquals(Set.of(filmId), filmDbStorage.getExistingFilmsIds(List.of(filmId, filmId + 100)));
+        assertEquals(Set.of(userId), userDbStorage.getExistingUsersIds(List.of(userId, userId + 100)));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testRemoveLikes() {
+        Long userId = userDbStorage.getAllUsers().getFirst().getId();
+        Long filmId = filmDbStorage.getAllFilms().getFirst().getId();
+        filmDbStorage.addLike(filmId, userId);
+
+        boolean[] deleted = filmDbStorage.removeLikes(List.of(
+                new FilmLike(filmId, userId),
+                new FilmLike(filmId, userId)
+        ));
+
+        assertArrayEquals(new boolean[]{true, false}, deleted);
+        assertEquals(0L, jdbcTemplate.queryForObject(
+                "SELECT like_count FROM films WHERE id = ?", Long.class, filmId));
+        assertTrue(likeCountChecker.findInconsistentFilmsIds().isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testAddLikeIsIdempotentAndChecksTargetsOnFailure() {
+        Long userId = userDbStorage.getAllUsers().getFirst().getId();
+        Long filmId = filmDbStorage.getAllFilms().getFirst().getId();
+
+        filmDbStorage.addLike(filmId, userId);
+        filmDbStorage.addLike(filmId, userId);
+
+        assertEquals(1L, jdbcTemplate.queryForObject(
+                "SELECT like_count FROM films WHERE id = ?", Long.class, filmId));
+        assertThrows(NotFoundException.class, () -> filmDbStorage.addLike(filmId + 100, userId));
+        assertThrows(NotFoundException.class, () -> filmDbStorage.addLike(filmId, userId + 100));
+        assertThrows(NotFoundException.class, () -> filmDbStorage.removeLike(filmId + 100, userId));
+        assertThrows(NotFoundException.class, () -> filmDbStorage.removeLike(filmId, userId + 100));
+        assertTrue(likeCountChecker.findInconsistentFilmsIds().isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFriendMutationsAreIdempotent() {
+        Long userId = userDbStorage.getAllUsers().getFirst().getId();
+        Long friendId = createUsers("Friend", 1).getFirst();
+
+        assertTrue(userDbStorage.addFriend(userId, friendId));
+        assertFalse(userDbStorage.addFriend(userId, friendId));
+        assertThrows(NotFoundException.class, () -> userDbStorage.addFriend(userId, friendId + 100));
+        assertTrue(userDbStorage.removeFriend(userId, friendId));
+        assertFalse(userDbStorage.removeFriend(userId, friendId));
+        assertThrows(NotFoundException.class, () -> userDbStorage.removeFriend(userId + 100, friendId));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetCommonFriends() {
+        List<Long> usersIds = createUsers("Common", 4);
+        Long userId = usersIds.get(0);
+        Long anotherUserId = usersIds.get(1);
+        userDbStorage.addFriend(userId, usersIds.get(2));
+        userDbStorage.addFriend(userId, usersIds.get(3));
+        userDbStorage.addFriend(anotherUserId, usersIds.get(3));
+
+        List<User> commonFriends = userDbStorage.getCommonFriends(userId, anotherUserId);
+
+        assertEquals(1, commonFriends.size());
+        assertEquals(usersIds.get(3), commonFriends.getFirst().getId());
+        assertTrue(userDbStorage.getCommonFriends(userId, usersIds.get(2)).isEmpty());
+        assertThrows(NotFoundException.class, () -> userDbStorage.getCommonFriends(userId, userId + 100));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFriendGraphMatchesSql() {
+        List<Long> usersIds = createUsers("Graph", 5);
+        userDbStorage.addFriend(usersIds.get(0), usersIds.get(2));
+        userDbStorage.addFriend(usersIds.get(0), usersIds.get(3));
+        userDbStorage.addFriend(usersIds.get(1), usersIds.get(3));
+        userDbStorage.addFriend(usersIds.get(1), usersIds.get(4));
+
+        FriendGraph graph = new FriendGraph(jdbcTemplate, 100, 1000);
+        graph.rebuild();
+        assertEquals(4, graph.getEdgeCount());
+        assertArrayEquals(new long[]{usersIds.get(3)}, graph.getCommonFriendsIds(usersIds.get(0), usersIds.get(1)));
+
+        graph.addFriend(usersIds.get(0), usersIds.get(4));
+        graph.removeFriend(usersIds.get(1), usersIds.get(3));
+        assertArrayEquals(new long[]{usersIds.get(4)}, graph.getCommonFriendsIds(usersIds.get(0), usersIds.get(1)));
+
+        graph.compact();
+        assertEquals(0, graph.getDeltaSize());
+        assertEquals(4, graph.getEdgeCount());
+        assertArrayEquals(new long[]{usersIds.get(2), usersIds.get(3), usersIds.get(4)},
+                graph.getFriendsIds(usersIds.get(0)));
+        assertArrayEquals(new long[]{usersIds.get(4)}, graph.getCommonFriendsIds(usersIds.get(0), usersIds.get(1)));
+
+        FriendRecommendationService recommendationService =
+                new FriendRecommendationService(userDbStorage, 100, 2, 2, 100, 60);
+        UserService userService = new UserService(userDbStorage, Optional.of(graph), recommendationService);
+        assertEquals(List.of(usersIds.get(4)), userService.getAllCommonFriendsByIds(usersIds.get(0), usersIds.get(1))
+                .stream().map(User::getId).toList());
+        assertTrue(userService.getAllCommonFriendsByIds(usersIds.get(0), usersIds.get(2)).isEmpty());
+        assertThrows(NotFoundException.class,
+                () -> userService.getAllCommonFriendsByIds(usersIds.get(0), usersIds.get(4) + 100));
+        recommendationService.stop();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFriendRecommendations() {
+        List<Long> usersIds = createUsers("Recommended", 6);
+        Long userId = usersIds.get(0);
+        userDbStorage.addFriend(userId, usersIds.get(1));
+        userDbStorage.addFriend(userId, usersIds.get(2));
+        userDbStorage.addFriend(usersIds.get(1), usersIds.get(2));
+        userDbStorage.addFriend(usersIds.get(1), usersIds.get(3));
+        userDbStorage.addFriend(usersIds.get(2), usersIds.get(3));
+        userDbStorage.addFriend(usersIds.get(2), usersIds.get(4));
+        userDbStorage.addFriend(usersIds.get(2), userId);
+
+        FriendRecommendationService recommendationService =
+                new FriendRecommendationService(userDbStorage, 100, 2, 2, 100, 60);
+        List<User> recommendations = recommendationService.getRecommendations(userId, 10);
+
+        assertEquals(List.of(usersIds.get(3), usersIds.get(4)),
+                recommendations.stream().map(User::getId).toList());
+        assertEquals(1, recommendationService.getRecommendations(userId, 1).size());
+        recommendationService.stop();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFriendRecommendationsWithCappedFanOut() {
+        List<Long> usersIds = createUsers("Sampled", 5);
+        Long userId = usersIds.get(0);
+        for (Long friendId : usersIds.subList(1, 4)) {
+            userDbStorage.addFriend(userId, friendId);
+            for (Long friendOfFriendId : usersIds.subList(1, 5)) {
+                if (!friendOfFriendId.equals(friendId)) {
+                    userDbStorage.addFriend(friendId, friendOfFriendId);
+                }
+            }
+        }
+        assertArrayEquals(new long[]{usersIds.get(1), usersIds.get(3)},
+                userDbStorage.getFriendsIdsAmong(userId, new long[]{usersIds.get(1), usersIds.get(3), usersIds.get(4)}));
+
+        FriendRecommendationService recommendationService =
+                new FriendRecommendationService(userDbStorage, 2, 2, 2, 100, 60);
+        for (int i = 0; i < 20; i++) {
+            recommendationService.invalidate(userId);
+            List<Long> recommendedIds = recommendationService.getRecommendations(userId, 10).stream()
+                    .map(User::getId)
+                    .toList();
+            // друзья вне случайной выборки из двух не рекомендуются
+            assertTrue(List.of(usersIds.get(4)).containsAll(recommendedIds));
+            assertTrue(userDbStorage.getFriendsIdsByUsersIds(List.of(userId), 2).get(userId).length <= 2);
+        }
+        recommendationService.stop();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFilmLikeBitmapIndexFollowsLikes() {
+        List<Long> usersIds = createUsers("Bitmap", 3);
+        List<Long> filmsIds = createFilms("Bitmap", 3);
+        filmDbStorage.addLike(filmsIds.get(0), usersIds.get(0));
+        filmDbStorage.addLike(filmsIds.get(0), usersIds.get(1));
+        filmDbStorage.addLike(filmsIds.get(1), usersIds.get(1));
+        filmDbStorage.addLikes(List.of(new FilmLike(filmsIds.get(2), usersIds.get(2))));
+
+        List<FilmLikeBitmapIndex.Neighbor> neighbors = likeBitmapIndex.findNeighbors(usersIds.get(0), 10);
+        assertEquals(List.of(new FilmLikeBitmapIndex.Neighbor(usersIds.get(1), 1)), neighbors);
+        assertArrayEquals(new int[]{filmsIds.get(2).intValue()}, likeBitmapIndex.getLikedFilmsIds(usersIds.get(2), 10));
+
+        assertEquals(2, likeBitmapIndex.getLikesCount(filmsIds.get(0)));
+
+        filmDbStorage.removeLike(filmsIds.get(0), usersIds.get(1));
+        assertTrue(likeBitmapIndex.findNeighbors(usersIds.get(0), 10).isEmpty());
+        assertArrayEquals(new int[]{usersIds.get(0).intValue()}, likeBitmapIndex.getLikersIds(filmsIds.get(0), 10));
+        assertThrows(InternalServerException.class,
+                () -> likeBitmapIndex.onLikeAdded(filmsIds.get(0), Integer.MAX_VALUE + 1L));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSimilarFilms() {
+        List<Long> usersIds = createUsers("Similar", 3);
+        List<Long> filmsIds = createFilms("Similar", 3);
+        filmDbStorage.addLike(filmsIds.get(0), usersIds.get(0));
+        filmDbStorage.addLike(filmsIds.get(0), usersIds.get(1));
+        filmDbStorage.addLike(filmsIds.get(1), usersIds.get(0));
+        filmDbStorage.addLike(filmsIds.get(1), usersIds.get(1));
+        filmDbStorage.addLike(filmsIds.get(2), usersIds.get(1));
+        filmDbStorage.addLike(filmsIds.get(2), usersIds.get(2));
+
+        filmSimilarityService.refresh();
+        assertEquals(List.of(filmsIds.get(1), filmsIds.get(2)),
+                filmSimilarityService.getSimilarFilms(filmsIds.get(0), 10).stream().map(Film::getId).toList());
+        assertEquals(1, filmSimilarityService.getSimilarFilms(filmsIds.get(0), 1).size());
+
+        filmDbStorage.removeLike(filmsIds.get(2), usersIds.get(1));
+        filmSimilarityService.refresh();
+        assertEquals(List.of(filmsIds.get(1)),
+                filmSimilarityService.getSimilarFilms(filmsIds.get(0), 10).stream().map(Film::getId).toList());
+
+        assertThrows(NotFoundException.class, () -> filmSimilarityService.getSimilarFilms(9999L, 10));
+        assertThrows(ValidationException.class, () -> filmSimilarityService.getSimilarFilms(filmsIds.get(0), 0));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSimilarFilmsFollowGenrePopularity() {
+        List<Long> usersIds = createUsers("Genre", 5);
+        List<Long> filmsIds = createFilms("Genre", 3);
+        for (Long filmId : filmsIds) {
+            filmDbStorage.update(withGenres(filmDbStorage.getFilmById(filmId), new Genre(1, "Комедия")));
+        }
+        filmDbStorage.addLike(filmsIds.get(0), usersIds.get(0));
+        filmDbStorage.addLike(filmsIds.get(0), usersIds.get(1));
+        filmDbStorage.addLike(filmsIds.get(1), usersIds.get(2));
+
+        // в список популярных фильмов жанра попадает один фильм
+        FilmSimilarityService similarityService = new FilmSimilarityService(likeBitmapIndex, filmSimilarityDbStorage,
+                filmDbStorage, 20, 1000, 1, 0.5, 60);
+        similarityService.refresh();
+        assertEquals(List.of(filmsIds.get(0)), similarityService.getSimilarFilms(filmsIds.get(1), 10).stream()
+                .map(Film::getId).toList());
+
+        filmDbStorage.addLike(filmsIds.get(2), usersIds.get(3));
+        filmDbStorage.addLike(filmsIds.get(2), usersIds.get(4));
+        filmDbStorage.addLike(filmsIds.get(2), usersIds.get(0));
+        similarityService.markFilmChanged(filmsIds.get(2));
+        similarityService.markFilmChanged(filmsIds.get(1));
+        similarityService.refresh();
+        assertEquals(List.of(filmsIds.get(2)), similarityService.getSimilarFilms(filmsIds.get(1), 10).stream()
+                .map(Film::getId).toList());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testFilmRecommendations() {
+        List<Long> usersIds = createUsers("Taste", 4);
+        List<Long> filmsIds = createFilms("Taste", 4);
+        filmDbStorage.addLike(filmsIds.get(0), usersIds.get(0));
+        filmDbStorage.addLike(filmsIds.get(1), usersIds.get(0));
+        filmDbStorage.addLike(filmsIds.get(0), usersIds.get(1));
+        filmDbStorage.addLike(filmsIds.get(1), usersIds.get(1));
+        filmDbStorage.addLike(filmsIds.get(2), usersIds.get(1));
+        filmDbStorage.addLike(filmsIds.get(0), usersIds.get(2));
+        filmDbStorage.addLike(filmsIds.get(3), usersIds.get(2));
+
+        FilmRecommendationService recommendationService =
+                new FilmRecommendationService(likeBitmapIndex, filmDbStorage, userDbStorage, 50);
+
+        assertEquals(List.of(filmsIds.get(2), filmsIds.get(3)),
+                recommendationService.getRecommendations(usersIds.get(0), 10).stream().map(Film::getId).toList());
+        assertEquals(List.of(filmsIds.get(2)),
+                recommendationService.getRecommendations(usersIds.get(0), 1).stream().map(Film::getId).toList());
+        assertTrue(recommendationService.getRecommendations(usersIds.get(3), 10).isEmpty());
+
+        assertThrows(NotFoundException.class, () -> recommendationService.getRecommendations(9999L, 10));
+        assertThrows(ValidationException.class, () -> recommendationService.getRecommendations(usersIds.get(0), 0));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSearchFilms() {
+        filmSearchIndex.rebuild();
+        assertEquals(List.of(1L), filmSearchIndex.search("film", 10));
+
+        Film wars = filmDbStorage.create(newFilm("Звёздные войны", "Space opera, космическая опера",
+                LocalDate.of(1977, 5, 25), new Rating(1, "G")));
+        Film trek = filmDbStorage.create(newFilm("Star Trek", "Космическая опера о звездных войнах",
+                LocalDate.of(1979, 12, 7), new Rating(1, "G")));
+        filmSearchIndex.putAll(List.of(wars, trek));
+
+        assertEquals(List.of(wars.getId(), trek.getId()), filmSearchIndex.search("звездная война", 10));
+        assertEquals(List.of(wars.getId(), trek.getId()), filmSearchIndex.search("космич", 10));
+        assertEquals(List.of(wars.getId()), filmSearchIndex.search("SPACE operas", 10));
+        assertTrue(filmSearchIndex.search("звездные пришельцы", 10).isEmpty());
+
+        filmDbStorage.addLike(trek.getId(), 1L);
+        assertEquals(List.of(trek.getId(), wars.getId()), filmSearchIndex.search("опера", 10));
+
+        filmSearchIndex.put(filmDbStorage.update(new Film(
+                trek.getId(),
+                trek.getName(),
+                "Приключения экипажа",
+                trek.getReleaseDate(),
+                trek.getDuration(),
+                trek.getGenres(),
+                trek.getMpa()
+        )));
+        assertEquals(List.of(wars.getId()), filmSearchIndex.search("звездные войны", 10));
+        assertEquals(List.of(trek.getId()), filmSearchIndex.search("экипаж", 10));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSearchByPrefixOfManyTerms() {
+        List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 70; i++) {
+            films.add(newFilm("Zeta" + (char) ('a' + i / 10) + (char) ('a' + i % 10), "Description",
+                    LocalDate.of(2010, 1, 1), new Rating(1, "G")));
+        }
+        List<Film> created = filmDbStorage.createAll(films);
+        filmSearchIndex.putAll(created);
+
+        List<Long> found = filmSearchIndex.search("zeta", 100);
+        assertEquals(70, found.size());
+        assertEquals(Set.copyOf(created.stream().map(Film::getId).toList()), Set.copyOf(found));
+        assertTrue(filmSearchIndex.search("ze", 100).isEmpty());
+        assertEquals(List.of(created.getLast().getId()), filmSearchIndex.search("zetagj", 100));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetTopFilmsByGenreAndYear() {
+        Long secondUserId = createUsers("Popular", 1).getFirst();
+        Genre comedy = new Genre(1, "Комедия");
+        Genre drama = new Genre(2, "Драма");
+        Rating mpa = new Rating(1, "G");
+        Film comedy2024 = filmDbStorage.create(newFilm("Comedy 2024", "Description", LocalDate.of(2024, 3, 1),
+                mpa, comedy));
+        Film drama2024 = filmDbStorage.create(newFilm("Drama 2024", "Description", LocalDate.of(2024, 8, 1),
+                mpa, drama));
+        Film comedyDrama2023 = filmDbStorage.create(newFilm("Comedy drama 2023", "Description",
+                LocalDate.of(2023, 12, 31), mpa, comedy, drama));
+        filmDbStorage.addLike(comedyDrama2023.getId(), 1L);
+        filmDbStorage.addLike(comedyDrama2023.getId(), secondUserId);
+        filmDbStorage.addLike(comedy2024.getId(), 1L);
+
+        assertEquals(List.of(comedyDrama2023.getId(), comedy2024.getId()),
+                filmDbStorage.getTopFilms(10, 1, null).stream().map(Film::getId).toList());
+        assertEquals(List.of(comedy2024.getId(), drama2024.getId()),
+                filmDbStorage.getTopFilms(10, null, 2024).stream().map(Film::getId).toList());
+        assertEquals(List.of(drama2024.getId()),
+                filmDbStorage.getTopFilms(10, 2, 2024).stream().map(Film::getId).toList());
+        assertEquals(List.of(comedyDrama2023.getId()),
+                filmDbStorage.getTopFilms(1, 2, null).stream().map(Film::getId).toList());
+        assertTrue(filmDbStorage.getTopFilms(10, 1, 2001).isEmpty());
+
+        filmDbStorage.update(withGenres(drama2024, comedy));
+        assertEquals(List.of(comedy2024.getId(), drama2024.getId()),
+                filmDbStorage.getTopFilms(10, 1, 2024).stream().map(Film::getId).toList());
+        assertTrue(filmDbStorage.getTopFilms(10, 2, 2024).isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testJdbcQueryMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        JdbcOperations jdbc = JdbcQueryMetrics.wrap(jdbcTemplate, registry, false, 500);
+        UserDbStorage userStorage = new UserDbStorage(jdbc, new UserRowMapper());
+
+        userStorage.getUserById(1L);
+        userStorage.getUserById(1L);
+        assertThrows(NotFoundException.class, () -> userStorage.getUserById(Long.MAX_VALUE));
+        Timer getUserTimer = registry.get("filmorate.jdbc.query").tag("query", "user.getUserById").timer();
+        assertEquals(3, getUserTimer.count());
+        DistributionSummary getUserRows = registry.get("filmorate.jdbc.rows")
+                .tag("query", "user.getUserById").summary();
+        assertEquals(3, getUserRows.count());
+        assertEquals(2.0, getUserRows.totalAmount());
+        assertTrue(registry.find("filmorate.jdbc.errors").counters().isEmpty());
+
+        List<Long> filmsIds = jdbc.queryForList("SELECT id FROM films ORDER BY id", Long.class);
+        final String UPDATE_DURATION_QUERY = "UPDATE films SET duration = ? WHERE id = ?";
+        jdbc.batchUpdate("/* test.updateDurations */ " + UPDATE_DURATION_QUERY,
+                List.of(new Object[]{110, filmsIds.getFirst()}, new Object[]{120, filmsIds.getFirst()}));
+        jdbc.update("/* test.updateDuration */ " + UPDATE_DURATION_QUERY, 130, filmsIds.getFirst());
+        DistributionSummary batchSize = registry.get("filmorate.jdbc.batch.size")
+                .tag("query", "test.updateDurations").summary();
+        assertEquals(1, batchSize.count());
+        assertEquals(2.0, batchSize.totalAmount());
+        assertEquals(1, registry.get("filmorate.jdbc.query").tag("query", "test.updateDurations").timer().count());
+        assertEquals(1, registry.get("filmorate.jdbc.query").tag("query", "test.updateDuration").timer().count());
+        assertEquals(1, registry.get("filmorate.jdbc.query").tag("query", "other").timer().count());
+
+        assertThrows(DataAccessException.class,
+                () -> jdbc.queryForList("/* test.findMissing */ SELECT id FROM missing_films", Long.class));
+        assertEquals(1.0, registry.get("filmorate.jdbc.errors")
+                .tag("query", "test.findMissing")
+                .tag("exception", "BadSqlGrammarException").counter().count());
+    }
+
+    private List<Long> createUsers(String prefix, int count) {
+        List<Long> usersIds = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            usersIds.add(userDbStorage.create(new User(
+                    0L,
+                    prefix + " " + i,
+                    prefix.toLowerCase() + i + "@mail.com",
+                    prefix.toLowerCase() + i,
+                    LocalDate.of(1990, 1, 1).plusDays(i)
+            )).getId());
+        }
+        return usersIds;
+    }
+
+    private List<Long> createFilms(String prefix, int count) {
+        List<Long> filmsIds = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            filmsIds.add(filmDbStorage.create(newFilm(prefix + " film " + i, "Description",
+                    LocalDate.of(2000, 1, 1).plusDays(i), new Rating(1, "G"))).getId());
+        }
+        return filmsIds;
+    }
+
+    private static Film newFilm(String name, String description, LocalDate releaseDate, Rating mpa,
+                                Genre... genres) {
+        return new Film(
+                0L,
+                name,
+                description,
+                releaseDate,
+                100,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(genres))),
+                mpa
+        );
+    }
+
+    private static Film withGenres(Film film, Genre... genres) {
+        return new Film(
+                film.getId(),
+                film.getName(),
+                film.getDescription(),
+                film.getReleaseDate(),
+                film.getDuration(),
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(genres))),
+                film.getMpa()
+        );
+    }
 }
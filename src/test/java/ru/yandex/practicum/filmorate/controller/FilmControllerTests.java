@@ -0,0 +1,252 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmSimilarityService;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Проверка эндпоинтов фильмов через MockMvc на всем приложении с базой в памяти:
+ * разбор параметров, проверка лимитов, заголовки и формат ответа. База каждого теста
+ * пересоздается через @DirtiesContext.
+ */
+@SpringBootTest
+@AutoConfigureTestDatabase
+@AutoConfigureMockMvc
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FilmControllerTests {
+    private final MockMvc mockMvc;
+    private final ObjectMapper objectMapper;
+    private final FilmSimilarityService filmSimilarityService;
+
+    @Test
+    @DirtiesContext
+    public void testGetFilmsPage() throws Exception {
+        Long firstId = createFilm("Page film 1", "Description");
+        Long secondId = createFilm("Page film 2", "Description");
+        Long thirdId = createFilm("Page film 3", "Description");
+
+        mockMvc.perform(get("/films").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(secondId)))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(firstId))
+                .andExpect(jsonPath("$[1].id").value(secondId));
+        mockMvc.perform(get("/films").param("limit", "2").param("after", String.valueOf(secondId)))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(thirdId));
+        mockMvc.perform(get("/films"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(jsonPath("$", hasSize(3)));
+
+        mockMvc.perform(get("/films").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films").param("limit", "1001"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films").param("after", "-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testStreamAllFilms() throws Exception {
+        Long firstId = createFilm("Stream film 1", "Description");
+        Long secondId = createFilm("Stream film 2", "Description");
+
+        MvcResult started = mockMvc.perform(get("/films/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+
+        List<Long> streamedIds = new ArrayList<>();
+        for (String line : body.split("\n")) {
+            streamedIds.add(objectMapper.readValue(line, Film.class).getId());
+        }
+        assertEquals(List.of(firstId, secondId), streamedIds);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testCreateFilmsBatch() throws Exception {
+        String response = mockMvc.perform(post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(newFilm("Batch film 1", "Description"),
+                                newFilm("Batch film 2", "Description")))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].name").value("Batch film 1"))
+                .andExpect(jsonPath("$[1].name").value("Batch film 2"))
+                .andReturn().getResponse().getContentAsString();
+        Film[] createdFilms = objectMapper.readValue(response, Film[].class);
+        mockMvc.perform(get("/films/{id}", createdFilms[1].getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Batch film 2"));
+
+        mockMvc.perform(post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(post("/films/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(newFilm(" ", "Description")))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testAddLikesBatch() throws Exception {
+        Long filmId = createFilm("Liked film", "Description");
+        Long userId = createUser("liker");
+
+        mockMvc.perform(put("/films/likes/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(
+                                new FilmLike(filmId, userId),
+                                new FilmLike(filmId, userId),
+                                new FilmLike(filmId + 100, userId),
+                                new FilmLike(filmId, userId + 100),
+                                new FilmLike(null, userId)))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(5)))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].status").value("ALREADY_EXISTS"))
+                .andExpect(jsonPath("$[2].status").value("FILM_NOT_FOUND"))
+                .andExpect(jsonPath("$[3].status").value("USER_NOT_FOUND"))
+                .andExpect(jsonPath("$[4].status").value("INVALID"));
+        mockMvc.perform(get("/films/popular").param("count", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(filmId));
+
+        mockMvc.perform(put("/films/likes/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetSimilarFilms() throws Exception {
+        Long filmId = createFilm("Similar film 1", "Description");
+        Long similarFilmId = createFilm("Similar film 2", "Description");
+        createFilm("Similar film 3", "Description");
+        for (String login : List.of("first", "second")) {
+            Long userId = createUser(login);
+            mockMvc.perform(put("/films/{id}/like/{userId}", filmId, userId))
+                    .andExpect(status().isOk());
+            mockMvc.perform(put("/films/{id}/like/{userId}", similarFilmId, userId))
+                    .andExpect(status().isOk());
+        }
+        filmSimilarityService.refresh();
+
+        mockMvc.perform(get("/films/{id}/similar", filmId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id").value(similarFilmId));
+        mockMvc.perform(get("/films/{id}/similar", filmId).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+
+        mockMvc.perform(get("/films/{id}/similar", filmId).param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/{id}/similar", filmId).param("limit", "101"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/{id}/similar", filmId + 100))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSearchFilms() throws Exception {
+        Long warsId = createFilm("Звёздные войны", "Космическая опера");
+        Long trekId = createFilm("Star Trek", "Космическая опера о звездных войнах");
+
+        mockMvc.perform(get("/films/search").param("q", "звездные войны"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].id").value(warsId))
+                .andExpect(jsonPath("$[1].id").value(trekId));
+        mockMvc.perform(get("/films/search").param("q", "опера").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+        mockMvc.perform(get("/films/search").param("q", "пришельцы"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(0)));
+
+        mockMvc.perform(get("/films/search").param("q", "опера").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/search").param("q", "опера").param("limit", "101"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/search").param("q", "опера").param("limit", "десять"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/search").param("q", " "))
+                .andExpect(status().isBadRequest());
+    }
+
+    private Long createFilm(String name, String description) throws Exception {
+        String response = mockMvc.perform(post("/films")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(newFilm(name, description))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(response, Film.class).getId();
+    }
+
+    private Long createUser(String login) throws Exception {
+        User user = new User(0L, login, login + "@mail.com", login, LocalDate.of(1990, 1, 1));
+        String response = mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readValue(response, User.class).getId();
+    }
+
+    private static Film newFilm(String name, String description) {
+        return new Film(
+                0L,
+                name,
+                description,
+                LocalDate.of(2000, 1, 1),
+                100,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>()),
+                new Rating(1, "G")
+        );
+    }
+}
@@ -0,0 +1,211 @@
+package ru.yandex.practicum.filmorate.dao.buffer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.dao.TransientDataAccessResourceException;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Буфер проверяется на заглушке FilmStorage, лайки в БД заглушки задаются в storedLikes.
+ * Интервал фонового сброса большой, поэтому сброс происходит только явно, по порогу или при остановке.
+ */
+class LikeWriteBufferTests {
+
+    private static final long FLUSH_INTERVAL_MS = 60_000;
+
+    private final FilmStorage filmStorage = mock(FilmStorage.class);
+
+    private final List<LikeWriteBuffer> buffers = new ArrayList<>();
+
+    private final Set<FilmLike> storedLikes = new HashSet<>();
+
+    @BeforeEach
+    void stubStoredLikes() {
+        when(filmStorage.getExistingLikes(anyCollection())).thenAnswer(invocation -> {
+            Set<FilmLike> existingLikes = new HashSet<>(invocation.<Collection<FilmLike>>getArgument(0));
+            existingLikes.retainAll(storedLikes);
+            return existingLikes;
+        });
+    }
+
+    @AfterEach
+    void stopBuffers() throws InterruptedException {
+        reset(filmStorage);
+        for (LikeWriteBuffer buffer : buffers) {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    public void testLastWriteWins() {
+        storedLikes.add(new FilmLike(2L, 1L));
+        LikeWriteBuffer buffer = buffer(100, 1000);
+        buffer.addLike(1L, 1L);
+        buffer.removeLike(1L, 1L);
+        buffer.addLike(1L, 1L);
+        buffer.addLike(2L, 1L);
+        buffer.removeLike(2L, 1L);
+        assertEquals(2, buffer.getPendingCount());
+
+        buffer.flush();
+        verify(filmStorage).getExistingLikes(anyCollection());
+        verify(filmStorage).addLikes(List.of(new FilmLike(1L, 1L)));
+        verify(filmStorage).removeLikes(List.of(new FilmLike(2L, 1L)));
+        verifyNoMoreInteractions(filmStorage);
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testStateMatchingDatabaseIsNotWritten() {
+        storedLikes.add(new FilmLike(1L, 1L));
+        LikeWriteBuffer buffer = buffer(3, 50);
+        buffer.removeLike(1L, 1L);
+        buffer.addLike(1L, 1L);
+        buffer.addLike(2L, 1L);
+        buffer.removeLike(2L, 1L);
+        buffer.addLike(3L, 1L);
+
+        buffer.flush();
+        verify(filmStorage).addLikes(List.of(new FilmLike(3L, 1L)));
+        verify(filmStorage, never()).removeLikes(anyList());
+        assertEquals(0, buffer.getPendingCount());
+
+        // места отброшенных записей освобождены
+        buffer.addLike(4L, 1L);
+        buffer.addLike(5L, 1L);
+        assertEquals(2, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testAllChangesAreWrittenWhenDatabaseStateIsUnknown() {
+        when(filmStorage.getExistingLikes(anyCollection()))
+                .thenThrow(new TransientDataAccessResourceException("БД недоступна"));
+        LikeWriteBuffer buffer = buffer(100, 1000);
+        buffer.addLike(1L, 1L);
+        buffer.removeLike(2L, 1L);
+
+        buffer.flush();
+        verify(filmStorage).addLikes(List.of(new FilmLike(1L, 1L)));
+        verify(filmStorage).removeLikes(List.of(new FilmLike(2L, 1L)));
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testFlushOnThreshold() {
+        LikeWriteBuffer buffer = buffer(3, 1000);
+        buffer.addLike(1L, 1L);
+        buffer.addLike(2L, 1L);
+        verify(filmStorage, after(100).never()).addLikes(anyList());
+
+        buffer.addLike(3L, 1L);
+        verify(filmStorage, timeout(2000)).addLikes(argThat(likes -> likes.size() == 3));
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testRequeueAfterDataAccessException() {
+        storedLikes.add(new FilmLike(2L, 1L));
+        when(filmStorage.addLikes(anyList()))
+                .thenThrow(new TransientDataAccessResourceException("БД недоступна"))
+                .thenReturn(new boolean[]{true});
+        when(filmStorage.removeLikes(anyList())).thenReturn(new boolean[]{true});
+        LikeWriteBuffer buffer = buffer(100, 1000);
+        buffer.addLike(1L, 1L);
+        buffer.removeLike(2L, 1L);
+
+        assertThrows(TransientDataAccessResourceException.class, buffer::flush);
+        assertEquals(1, buffer.getPendingCount());
+        verify(filmStorage).removeLikes(List.of(new FilmLike(2L, 1L)));
+
+        buffer.flush();
+        verify(filmStorage, times(2)).addLikes(List.of(new FilmLike(1L, 1L)));
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testNewerStateIsKeptAfterFailedFlush() {
+        LikeWriteBuffer buffer = buffer(100, 1000);
+        when(filmStorage.addLikes(anyList())).thenAnswer(invocation -> {
+            buffer.removeLike(1L, 1L);
+            throw new TransientDataAccessResourceException("БД недоступна");
+        });
+        buffer.addLike(1L, 1L);
+
+        assertThrows(TransientDataAccessResourceException.class, buffer::flush);
+        assertEquals(1, buffer.getPendingCount());
+
+        reset(filmStorage);
+        storedLikes.add(new FilmLike(1L, 1L));
+        stubStoredLikes();
+        buffer.flush();
+        verify(filmStorage).removeLikes(List.of(new FilmLike(1L, 1L)));
+        verify(filmStorage, never()).addLikes(anyList());
+    }
+
+    @Test
+    public void testWritesAreRejectedWhenBufferIsFull() {
+        AtomicBoolean databaseDown = new AtomicBoolean(true);
+        when(filmStorage.addLikes(anyList())).thenAnswer(invocation -> {
+            if (databaseDown.get()) {
+                throw new TransientDataAccessResourceException("БД недоступна");
+            }
+            return new boolean[]{true};
+        });
+        LikeWriteBuffer buffer = buffer(2, 50);
+        buffer.addLike(1L, 1L);
+        buffer.removeLike(1L, 1L);
+        buffer.addLike(1L, 1L);
+        buffer.addLike(2L, 1L);
+
+        assertThrows(InternalServerException.class, () -> buffer.addLike(3L, 1L));
+        verify(filmStorage, timeout(2000).atLeastOnce()).addLikes(anyList());
+        assertTrue(buffer.getPendingCount() <= 2);
+
+        databaseDown.set(false);
+        buffer.flush();
+        assertEquals(0, buffer.getPendingCount());
+        buffer.addLike(3L, 1L);
+        assertEquals(1, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testFlushOnStop() throws InterruptedException {
+        storedLikes.add(new FilmLike(2L, 1L));
+        LikeWriteBuffer buffer = new LikeWriteBuffer(filmStorage,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class), FLUSH_INTERVAL_MS, 100, 1000);
+        buffer.start();
+        buffer.addLike(1L, 1L);
+        buffer.removeLike(2L, 1L);
+
+        buffer.stop();
+        verify(filmStorage).addLikes(List.of(new FilmLike(1L, 1L)));
+        verify(filmStorage).removeLikes(List.of(new FilmLike(2L, 1L)));
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    private LikeWriteBuffer buffer(int maxPending, long putTimeoutMs) {
+        LikeWriteBuffer buffer = new LikeWriteBuffer(filmStorage,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class),
+                FLUSH_INTERVAL_MS, maxPending, putTimeoutMs);
+        buffers.add(buffer);
+        return buffer;
+    }
+}
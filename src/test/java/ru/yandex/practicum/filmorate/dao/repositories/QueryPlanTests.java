@@ -0,0 +1,375 @@
+package ru.yandex.practicum.filmorate.dao.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.dao.mappers.FilmHydrator;
+import ru.yandex.practicum.filmorate.dao.mappers.GenreRowMapper;
+import ru.yandex.practicum.filmorate.dao.mappers.RatingRowMapper;
+import ru.yandex.practicum.filmorate.dao.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.dao.reference.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmSimilarity;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Проверка планов запросов: все SQL-запросы хранилищ, выполненные на заполненной базе,
+ * повторяются через EXPLAIN с теми же параметрами. Тест падает, если запрос читает таблицу
+ * полным просмотром, кроме методов, которые по смыслу читают весь каталог.
+ * Индекс популярности не подключается, поэтому проверяются и SQL-варианты топа фильмов.
+ * Публичные методы хранилищ находятся через reflection: метод, который не выполнил ни одного
+ * проверенного запроса и не указан в NO_SQL, роняет тест, поэтому новый метод не останется без проверки.
+ */
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({QueryPlanTests.RecordingJdbcConfiguration.class, UserDbStorage.class, UserRowMapper.class,
+        GenreDbStorage.class, GenreRowMapper.class, RatingDbStorage.class, RatingRowMapper.class,
+        FilmDbStorage.class, FilmHydrator.class, ReferenceDataRegistry.class, FilmSimilarityDbStorage.class})
+class QueryPlanTests {
+
+    private static final int FILMS_COUNT = 2_000;
+    private static final int USERS_COUNT = 500;
+    private static final int LIKES_PER_USER = 10;
+    private static final int FRIENDS_PER_USER = 5;
+
+    private static final Set<Class<?>> STORAGE_CLASSES = Set.of(FilmDbStorage.class, UserDbStorage.class,
+            GenreDbStorage.class, RatingDbStorage.class, FilmSimilarityDbStorage.class);
+
+    // методы, которые читают все строки таблиц
+    private static final Set<String> FULL_SCAN_ALLOWED = Set.of(
+            "FilmDbStorage.getAllFilms",
+            "FilmDbStorage.streamAllFilms",
+            "UserDbStorage.getAllUsers",
+            "FilmSimilarityDbStorage.forEachFilmGenres"
+    );
+
+    // методы, которые отвечают из ReferenceDataRegistry без SQL
+    private static final Set<String> NO_SQL = Set.of(
+            "GenreDbStorage.getAllGenres",
+            "GenreDbStorage.getGenreById",
+            "RatingDbStorage.getAllRatings",
+            "RatingDbStorage.getRatingById"
+    );
+
+    private static final Pattern TABLE_SCAN = Pattern.compile("/\\* PUBLIC\\.(\\w+)\\.tableScan");
+
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final FilmSimilarityDbStorage filmSimilarityDbStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final StatementRecorder statementRecorder;
+
+    @BeforeEach
+    void seedDb() {
+        Random random = new Random(42);
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO films (name, description, release_date, duration, mpa_rating_id)
+                VALUES (?, ?, ?, ?, ?);
+                """, rows(FILMS_COUNT, i -> new Object[]{"Film " + i, "Description " + i,
+                Date.valueOf(LocalDate.of(1950 + i % 75, 1 + i % 12, 1)), 90 + i % 60, 1 + i % 5}));
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO users (name, email, login, birthday)
+                VALUES (?, ?, ?, ?);
+                """, rows(USERS_COUNT, i -> new Object[]{"User " + i, "user" + i + "@mail.com", "user" + i,
+                Date.valueOf(LocalDate.of(1970 + i % 30, 1, 1))}));
+
+        List<Long> filmsIds = jdbcTemplate.queryForList("SELECT id FROM films ORDER BY id;", Long.class);
+        List<Long> usersIds = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id;", Long.class);
+        List<Object[]> filmGenres = new ArrayList<>();
+        for (int i = 0; i < filmsIds.size(); i++) {
+            filmGenres.add(new Object[]{filmsIds.get(i), 1 + i % 6});
+            if (i % 3 == 0) {
+                filmGenres.add(new Object[]{filmsIds.get(i), 1 + (i + 1) % 6});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?);", filmGenres);
+
+        Set<List<Long>> likes = new LinkedHashSet<>();
+        Set<List<Long>> friends = new LinkedHashSet<>();
+        for (Long userId : usersIds) {
+            for (int i = 0; i < LIKES_PER_USER; i++) {
+                likes.add(List.of(userId, filmsIds.get(random.nextInt(filmsIds.size()))));
+            }
+            for (int i = 0; i < FRIENDS_PER_USER; i++) {
+                Long friendId = usersIds.get(random.nextInt(usersIds.size()));
+                if (!friendId.equals(userId)) {
+                    friends.add(List.of(userId, friendId));
+                }
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO film_like (user_id, film_id) VALUES (?, ?);",
+                likes.stream().map(List::toArray).toList());
+        jdbcTemplate.update("""
+                UPDATE films AS f
+                SET like_count = (SELECT COUNT(*) FROM film_like AS fl WHERE fl.film_id = f.id);
+                """);
+        jdbcTemplate.batchUpdate("INSERT INTO user_friend (user_id, friend_id) VALUES (?, ?);",
+                friends.stream().map(List::toArray).toList());
+        jdbcTemplate.execute("ANALYZE;");
+        statementRecorder.statements().clear();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testStorageQueriesUseIndexes() {
+        List<Long> filmsIds = jdbcTemplate.queryForList("SELECT id FROM films ORDER BY id;", Long.class);
+        List<Long> usersIds = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id;", Long.class);
+        Long filmId = filmsIds.get(FILMS_COUNT / 2);
+        Long userId = usersIds.get(USERS_COUNT / 2);
+        Long anotherUserId = usersIds.get(USERS_COUNT / 2 + 1);
+
+        filmDbStorage.getAllFilms();
+        filmDbStorage.streamAllFilms(film -> {
+        });
+        filmDbStorage.getFilmsPage(null, 20);
+        filmDbStorage.getFilmsPage(filmId, 20);
+        filmDbStorage.getFilmById(filmId);
+        filmDbStorage.getFilmsByIds(filmsIds.subList(0, 50));
+        filmDbStorage.getExistingFilmsIds(filmsIds.subList(100, 150));
+        filmDbStorage.getTopFilms(10);
+        filmDbStorage.getTopFilms(10, 1, null);
+        filmDbStorage.getTopFilms(10, null, 2000);
+        filmDbStorage.getTopFilms(10, 1, 2000);
+
+        Film film = filmDbStorage.create(new Film(
+                0L,
+                "Plan film",
+                "Description",
+                LocalDate.of(2020, 1, 1),
+                100,
+                Collections.unmodifiableSequencedSet(new LinkedHashSet<>(List.of(new Genre(1, "Комедия")))),
+                new Rating(1, "G")
+        ));
+        filmDbStorage.createAll(List.of(film, film));
+        filmDbStorage.update(film);
+        filmDbStorage.addLike(film.getId(), userId);
+        filmDbStorage.addLike(film.getId(), userId);
+        filmDbStorage.removeLike(film.getId(), userId);
+        filmDbStorage.removeLike(film.getId(), userId);
+        assertThrows(NotFoundException.class, () -> filmDbStorage.removeLike(film.getId(), Long.MAX_VALUE));
+        filmDbStorage.addLikes(List.of(new FilmLike(film.getId(), userId), new FilmLike(film.getId(), anotherUserId)));
+        filmDbStorage.removeLikes(List.of(new FilmLike(film.getId(), userId)));
+        filmDbStorage.getExistingLikes(List.of(new FilmLike(film.getId(), userId), new FilmLike(filmId, userId)));
+
+        userDbStorage.getAllUsers();
+        userDbStorage.getUsersPage(null, 20);
+        userDbStorage.getUsersPage(userId, 20);
+        userDbStorage.getUserById(userId);
+        userDbStorage.getAllFriendsById(userId);
+        userDbStorage.getCommonFriends(userId, anotherUserId);
+        userDbStorage.getUsersByIds(usersIds.subList(0, 50));
+        userDbStorage.getExistingUsersIds(usersIds.subList(100, 150));
+        userDbStorage.getUserFriendsIdsById(userId);
+        userDbStorage.getFriendsIdsByUsersIds(usersIds.subList(0, 50), 3);
+        userDbStorage.getFriendsIdsAmong(userId, usersIds.subList(0, 50).stream().mapToLong(Long::longValue).toArray());
+        User user = userDbStorage.create(new User(0L, "Plan user", "plan@mail.com", "plan", LocalDate.of(1990, 1, 1)));
+        userDbStorage.update(user);
+        userDbStorage.addFriend(user.getId(), userId);
+        userDbStorage.addFriend(user.getId(), userId);
+        userDbStorage.removeFriend(user.getId(), userId);
+        userDbStorage.removeFriend(user.getId(), userId);
+        assertThrows(NotFoundException.class, () -> userDbStorage.addFriend(user.getId(), Long.MAX_VALUE));
+
+        long[] similarFilmsIds = {filmsIds.get(0), filmsIds.get(1)};
+        filmSimilarityDbStorage.replaceSimilarities(similarFilmsIds,
+                List.of(new FilmSimilarity(similarFilmsIds[0], similarFilmsIds[1], 0.5)));
+        filmSimilarityDbStorage.getSimilarFilmsIds(similarFilmsIds[0], 10);
+        filmSimilarityDbStorage.forEachFilmGenres((id, genres) -> {
+        });
+        filmSimilarityDbStorage.forEachFilmGenresByIds(similarFilmsIds, (id, genres) -> {
+        });
+
+        assertFalse(statementRecorder.statements().isEmpty());
+        Set<String> checkedMethods = new HashSet<>(NO_SQL);
+        statementRecorder.statements().forEach(statement -> checkedMethods.add(statement.caller()));
+        List<String> uncheckedMethods = new ArrayList<>();
+        for (Class<?> storageClass : STORAGE_CLASSES) {
+            for (Method method : storageClass.getDeclaredMethods()) {
+                String name = storageClass.getSimpleName() + "." + method.getName();
+                if (Modifier.isPublic(method.getModifiers()) && !method.isSynthetic()
+                        && !checkedMethods.contains(name)) {
+                    uncheckedMethods.add(name);
+                }
+            }
+        }
+        assertTrue(uncheckedMethods.isEmpty(), "Методы хранилищ без проверки плана: " + uncheckedMethods);
+        List<String> violations = tableScanViolations(statementRecorder.statements());
+        assertTrue(violations.isEmpty(), String.join("\n\n", violations));
+    }
+
+    @Test
+    @DirtiesContext
+    public void testUnindexedQueryIsReported() {
+        List<String> violations = tableScanViolations(List.of(
+                new RecordedStatement("FilmDbStorage.getFilmById", "SELECT id FROM films WHERE id = ?;",
+                        new ArgumentPreparedStatementSetter(new Object[]{1L})),
+                new RecordedStatement("FilmDbStorage.getFilmsByDuration", "SELECT id FROM films WHERE duration = ?;",
+                        new ArgumentPreparedStatementSetter(new Object[]{100}))
+        ));
+        assertEquals(1, violations.size(), String.join("\n\n", violations));
+        assertTrue(violations.getFirst().startsWith("FilmDbStorage.getFilmsByDuration: полный просмотр FILMS"),
+                violations.getFirst());
+    }
+
+    private List<String> tableScanViolations(List<RecordedStatement> statements) {
+        List<String> violations = new ArrayList<>();
+        for (RecordedStatement statement : statements) {
+            if (FULL_SCAN_ALLOWED.contains(statement.caller())) {
+                continue;
+            }
+            String plan = explain(statement);
+            Matcher matcher = TABLE_SCAN.matcher(plan);
+            while (matcher.find()) {
+                violations.add(statement.caller() + ": полный просмотр " + matcher.group(1) + "\n" + plan);
+            }
+        }
+        return violations;
+    }
+
+    private String explain(RecordedStatement statement) {
+        return jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("EXPLAIN " + statement.sql())) {
+                statement.parameters().setValues(ps);
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+                return plan.toString();
+            }
+        });
+    }
+
+    private static List<Object[]> rows(int count, IntFunction<Object[]> row) {
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(row.apply(i));
+        }
+        return rows;
+    }
+
+    record RecordedStatement(String caller, String sql, PreparedStatementSetter parameters) {
+    }
+
+    record StatementRecorder(List<RecordedStatement> statements) {
+    }
+
+    /**
+     * Подменяет JdbcOperations хранилищ оберткой, которая запоминает текст и параметры
+     * каждого запроса вместе с вызвавшим его публичным методом хранилища.
+     */
+    @TestConfiguration
+    static class RecordingJdbcConfiguration {
+
+        // собственный JdbcOperations отключает JdbcTemplateAutoConfiguration, поэтому шаблон создается здесь
+        @Bean
+        JdbcTemplate jdbcTemplate(DataSource dataSource) {
+            return new JdbcTemplate(dataSource);
+        }
+
+        @Bean
+        StatementRecorder statementRecorder() {
+            return new StatementRecorder(new CopyOnWriteArrayList<>());
+        }
+
+        @Bean
+        @Primary
+        JdbcOperations recordingJdbcOperations(JdbcTemplate jdbcTemplate, StatementRecorder statementRecorder) {
+            return (JdbcOperations) Proxy.newProxyInstance(JdbcOperations.class.getClassLoader(),
+                    new Class<?>[]{JdbcOperations.class}, (proxy, method, args) -> {
+                        if (args != null && args.length > 0 && args[0] instanceof String sql) {
+                            String caller = findStorageCaller();
+                            if (caller != null) {
+                                statementRecorder.statements()
+                                        .add(new RecordedStatement(caller, sql, parametersOf(args)));
+                            }
+                        } else if (args != null && args.length > 0 && args[0] instanceof SqlProvider provider
+                                && provider.getSql() != null) {
+                            String caller = findStorageCaller();
+                            if (caller != null) {
+                                statementRecorder.statements()
+                                        .add(new RecordedStatement(caller, provider.getSql(), nullParameters()));
+                            }
+                        }
+                        try {
+                            return method.invoke(jdbcTemplate, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+
+        private static PreparedStatementSetter parametersOf(Object[] args) {
+            Object last = args[args.length - 1];
+            if (args.length > 1 && last instanceof BatchPreparedStatementSetter batch) {
+                return ps -> batch.setValues(ps, 0);
+            }
+            if (args.length > 1 && last instanceof List<?> batchArgs && !batchArgs.isEmpty()
+                    && batchArgs.getFirst() instanceof Object[] firstArgs) {
+                return new ArgumentPreparedStatementSetter(firstArgs);
+            }
+            if (args.length > 1 && last instanceof Object[] queryArgs) {
+                return new ArgumentPreparedStatementSetter(queryArgs);
+            }
+            return ps -> {
+            };
+        }
+
+        // параметры PreparedStatementCreator недоступны снаружи, для EXPLAIN достаточно NULL
+        private static PreparedStatementSetter nullParameters() {
+            return ps -> {
+                for (int i = 1; i <= ps.getParameterMetaData().getParameterCount(); i++) {
+                    ps.setObject(i, null);
+                }
+            };
+        }
+
+        // внешний вызов хранилища, а не вспомогательный метод внутри него
+        private static String findStorageCaller() {
+            return StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE)
+                    .walk(frames -> frames
+                            .filter(frame -> STORAGE_CLASSES.contains(frame.getDeclaringClass()))
+                            .reduce((inner, outer) -> outer)
+                            .map(frame -> frame.getDeclaringClass().getSimpleName() + "." + frame.getMethodName())
+                            .orElse(null));
+        }
+    }
+}
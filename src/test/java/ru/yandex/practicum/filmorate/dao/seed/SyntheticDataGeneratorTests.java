@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.dao.seed;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.dao.graph.FriendGraph;
+import ru.yandex.practicum.filmorate.dao.index.FilmLikeBitmapIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.dao.index.FilmSearchIndex;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Генерация на отдельных встроенных базах: размер пакета меньше числа фильмов,
+ * чтобы пакеты фильмов и жанров отправлялись по нескольку раз.
+ */
+class SyntheticDataGeneratorTests {
+
+    private static final int USERS_COUNT = 200;
+    private static final int FILMS_COUNT = 500;
+    private static final long LIKES_COUNT = 3_000L;
+    private static final int BATCH_SIZE = 64;
+
+    private static final List<String> TABLE_DUMPS = List.of(
+            "SELECT * FROM users ORDER BY id;",
+            "SELECT * FROM films ORDER BY id;",
+            "SELECT * FROM film_genre ORDER BY film_id, genre_id;",
+            "SELECT * FROM film_like ORDER BY user_id, film_id;",
+            "SELECT * FROM user_friend ORDER BY user_id, friend_id;"
+    );
+
+    private final List<EmbeddedDatabase> databases = new ArrayList<>();
+
+    @AfterEach
+    void shutdownDatabases() {
+        databases.forEach(EmbeddedDatabase::shutdown);
+    }
+
+    @Test
+    public void testSameSeedGivesSameRows() {
+        JdbcTemplate first = seed(42L);
+        JdbcTemplate second = seed(42L);
+        JdbcTemplate other = seed(7L);
+
+        assertEquals(FILMS_COUNT, first.queryForObject("SELECT COUNT(*) FROM films;", Integer.class));
+        assertEquals(USERS_COUNT, first.queryForObject("SELECT COUNT(*) FROM users;", Integer.class));
+        assertTrue(first.queryForObject("SELECT COUNT(*) FROM film_genre;", Integer.class) >= FILMS_COUNT);
+        assertTrue(first.queryForObject("SELECT COUNT(*) FROM user_friend;", Integer.class) > 0);
+        assertEquals(first.queryForObject("SELECT COUNT(*) FROM film_like;", Long.class),
+                first.queryForObject("SELECT SUM(like_count) FROM films;", Long.class));
+
+        for (String dump : TABLE_DUMPS) {
+            assertEquals(first.queryForList(dump), second.queryForList(dump), dump);
+        }
+        assertNotEquals(first.queryForList(TABLE_DUMPS.get(3)), other.queryForList(TABLE_DUMPS.get(3)));
+    }
+
+    @Test
+    public void testNonEmptyDatabaseIsNotSeeded() {
+        JdbcTemplate jdbc = seed(42L);
+        generator(jdbc, 7L).run(new DefaultApplicationArguments());
+
+        assertEquals(FILMS_COUNT, jdbc.queryForObject("SELECT COUNT(*) FROM films;", Integer.class));
+        assertEquals(USERS_COUNT, jdbc.queryForObject("SELECT COUNT(*) FROM users;", Integer.class));
+    }
+
+    private JdbcTemplate seed(long randomSeed) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                .generateUniqueName(true)
+                .setType(EmbeddedDatabaseType.H2)
+                .addScripts("schema.sql", "data.sql")
+                .build();
+        databases.add(database);
+        JdbcTemplate jdbc = new JdbcTemplate(database);
+        generator(jdbc, randomSeed).run(new DefaultApplicationArguments());
+        return jdbc;
+    }
+
+    private static SyntheticDataGenerator generator(JdbcTemplate jdbc, long randomSeed) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        return new SyntheticDataGenerator(jdbc,
+                beanFactory.getBeanProvider(FilmPopularityIndex.class),
+                beanFactory.getBeanProvider(FilmLikeBitmapIndex.class),
+                beanFactory.getBeanProvider(FilmSearchIndex.class),
+                beanFactory.getBeanProvider(FriendGraph.class),
+                USERS_COUNT, FILMS_COUNT, LIKES_COUNT, 3, 1.0, randomSeed, BATCH_SIZE);
+    }
+}
@@ -0,0 +1,179 @@
+package ru.yandex.practicum.filmorate.load;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.yandex.practicum.filmorate.load.OpenModelLoadDriver.Operation;
+import ru.yandex.practicum.filmorate.load.OpenModelLoadDriver.Result;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нагрузочный прогон приложения на случайном порту. База в памяти заполняется профилем seed,
+ * затем смесь запросов к фильмам, пользователям, жанрам и рейтингам выполняется с постоянной
+ * частотой. По каждой операции печатаются p50/p99/p999, максимум, пропускная способность и доля ошибок,
+ * отчет в CSV пишется в load.report. В обычной сборке тест пропускается:
+ * mvn test -Dtest=HttpLoadTest -Dload.enabled=true -Dload.rate=500 -Dload.duration-seconds=60
+ */
+@Slf4j
+@Tag("load")
+@EnabledIfSystemProperty(named = "load.enabled", matches = "true")
+@ActiveProfiles("seed")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+        "logging.level.org.zalando.logbook=INFO"})
+class HttpLoadTest {
+
+    private static final int USERS_COUNT = Integer.getInteger("load.users", 10_000);
+    private static final int FILMS_COUNT = Integer.getInteger("load.films", 5_000);
+    private static final long LIKES_COUNT = Long.getLong("load.likes", 200_000L);
+
+    private static final int GENRES_COUNT = 6;
+    private static final int RATINGS_COUNT = 5;
+
+    private static final String DEFAULT_MIX = "films.get:20,films.popular:15,films.popular.genre:5,films.page:5,"
+            + "films.search:5,films.similar:5,films.like:5,users.get:10,users.friends:8,users.common:5,"
+            + "users.recommendations:3,users.friends.recommendations:2,genres.list:3,genres.get:3,"
+            + "mpa.list:3,mpa.get:3";
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void seedSizes(DynamicPropertyRegistry registry) {
+        registry.add("filmorate.seed.users", () -> USERS_COUNT);
+        registry.add("filmorate.seed.films", () -> FILMS_COUNT);
+        registry.add("filmorate.seed.likes", () -> LIKES_COUNT);
+    }
+
+    @Test
+    void constantArrivalRate() throws IOException {
+        double rate = Double.parseDouble(System.getProperty("load.rate", "200"));
+        Duration warmup = Duration.ofSeconds(Long.getLong("load.warmup-seconds", 10L));
+        Duration duration = Duration.ofSeconds(Long.getLong("load.duration-seconds", 30L));
+        long seed = Long.getLong("load.seed", 42L);
+        double maxErrorRate = Double.parseDouble(System.getProperty("load.max-error-rate", "0.01"));
+        String maxP99Millis = System.getProperty("load.max-p99-ms");
+
+        Map<String, Result> results;
+        try (HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build()) {
+            List<Operation> operations = operations(System.getProperty("load.mix", DEFAULT_MIX));
+            results = new OpenModelLoadDriver(client, operations).run(rate, warmup, duration, seed);
+        }
+
+        report(results, rate);
+        for (Result result : results.values()) {
+            assertTrue(result.errorRate() <= maxErrorRate, "Доля ошибок " + result.name() + " = "
+                    + result.errorRate() + " больше допустимой " + maxErrorRate);
+            if (maxP99Millis != null) {
+                assertTrue(result.percentileMillis(99.0) <= Double.parseDouble(maxP99Millis), "p99 "
+                        + result.name() + " = " + result.percentileMillis(99.0) + " мс больше " + maxP99Millis);
+            }
+        }
+    }
+
+    /**
+     * Смесь задается как name:weight через запятую, операции с весом 0 или без веса не выполняются.
+     */
+    private List<Operation> operations(String mix) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] nameAndWeight = entry.trim().split(":");
+            if (nameAndWeight.length != 2) {
+                throw new IllegalArgumentException("Неверный элемент смеси запросов: " + entry);
+            }
+            weights.put(nameAndWeight[0].trim(), Integer.parseInt(nameAndWeight[1].trim()));
+        }
+
+        Map<String, Function<SplittableRandom, HttpRequest>> requests = new LinkedHashMap<>();
+        requests.put("films.get", random -> get("/films/" + filmId(random)));
+        requests.put("films.popular", random -> get("/films/popular?count=10"));
+        requests.put("films.popular.genre", random -> get("/films/popular?count=10&genreId="
+                + (1 + random.nextInt(GENRES_COUNT))));
+        requests.put("films.page", random -> get("/films?limit=50&after=" + random.nextInt(FILMS_COUNT)));
+        requests.put("films.search", random -> get("/films/search?q=film+" + (1 + random.nextInt(99))));
+        requests.put("films.similar", random -> get("/films/" + filmId(random) + "/similar"));
+        requests.put("films.like", random -> HttpRequest.newBuilder(uri("/films/" + filmId(random) + "/like/"
+                + userId(random))).PUT(HttpRequest.BodyPublishers.noBody()).build());
+        requests.put("users.get", random -> get("/users/" + userId(random)));
+        requests.put("users.friends", random -> get("/users/" + userId(random) + "/friends"));
+        requests.put("users.common", random -> get("/users/" + userId(random) + "/friends/common/"
+                + userId(random)));
+        requests.put("users.recommendations", random -> get("/users/" + userId(random) + "/recommendations"));
+        requests.put("users.friends.recommendations", random -> get("/users/" + userId(random)
+                + "/friends/recommendations"));
+        requests.put("genres.list", random -> get("/genres"));
+        requests.put("genres.get", random -> get("/genres/" + (1 + random.nextInt(GENRES_COUNT))));
+        requests.put("mpa.list", random -> get("/mpa"));
+        requests.put("mpa.get", random -> get("/mpa/" + (1 + random.nextInt(RATINGS_COUNT))));
+
+        for (String name : weights.keySet()) {
+            if (!requests.containsKey(name)) {
+                throw new IllegalArgumentException("Неизвестная операция в смеси запросов: " + name
+                        + ", доступны: " + requests.keySet());
+            }
+        }
+        List<Operation> operations = new ArrayList<>();
+        requests.forEach((name, request) -> operations.add(
+                new Operation(name, weights.getOrDefault(name, 0), request)));
+        return operations;
+    }
+
+    private void report(Map<String, Result> results, double rate) throws IOException {
+        StringBuilder table = new StringBuilder(String.format("%nЦелевая частота: %.0f запросов/с%n", rate))
+                .append(String.format("%-30s %10s %10s %10s %10s %10s %8s%n",
+                        "operation", "rps", "p50, ms", "p99, ms", "p999, ms", "max, ms", "errors"));
+        StringBuilder csv = new StringBuilder("operation,requests,rps,p50_ms,p99_ms,p999_ms,max_ms,errors\n");
+        for (Result result : results.values()) {
+            double maxMillis = result.latency().getMaxValue() / 1000.0;
+            table.append(String.format("%-30s %10.1f %10.2f %10.2f %10.2f %10.2f %8d%n", result.name(),
+                    result.throughput(), result.percentileMillis(50.0), result.percentileMillis(99.0),
+                    result.percentileMillis(99.9), maxMillis, result.errors()));
+            csv.append(String.format(Locale.ROOT, "%s,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%d%n", result.name(),
+                    result.requests(), result.throughput(), result.percentileMillis(50.0),
+                    result.percentileMillis(99.0), result.percentileMillis(99.9), maxMillis, result.errors()));
+        }
+        log.info(table.toString());
+
+        Path reportPath = Path.of(System.getProperty("load.report", "target/load-report.csv"));
+        if (reportPath.getParent() != null) {
+            Files.createDirectories(reportPath.getParent());
+        }
+        Files.writeString(reportPath, csv);
+        log.info("Отчет нагрузочного прогона записан в {}", reportPath.toAbsolutePath());
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static long filmId(SplittableRandom random) {
+        return 1L + random.nextInt(FILMS_COUNT);
+    }
+
+    private static long userId(SplittableRandom random) {
+        return 1L + random.nextInt(USERS_COUNT);
+    }
+}
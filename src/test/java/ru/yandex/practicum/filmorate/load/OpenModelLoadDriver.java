@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.load;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Генератор нагрузки по открытой модели: запросы запускаются с постоянной частотой независимо
+ * от того, ответил ли сервер на предыдущие. Каждый запрос выполняется в своем виртуальном потоке,
+ * а задержка отсчитывается от запланированного момента отправки, а не от фактического,
+ * поэтому очередь перед медленным сервером попадает в измерения (без coordinated omission).
+ */
+final class OpenModelLoadDriver {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final HttpClient client;
+
+    private final List<Operation> operations;
+
+    private final int[] cumulativeWeights;
+
+    OpenModelLoadDriver(HttpClient client, List<Operation> operations) {
+        this.client = client;
+        this.operations = operations.stream()
+                .filter(operation -> operation.weight() > 0)
+                .toList();
+        if (this.operations.isEmpty()) {
+            throw new IllegalArgumentException("Смесь запросов не содержит ни одной операции с весом больше 0");
+        }
+        cumulativeWeights = new int[this.operations.size()];
+        int sum = 0;
+        for (int i = 0; i < this.operations.size(); i++) {
+            sum += this.operations.get(i).weight();
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    /**
+     * Запросы, отправленные в период прогрева, выполняются, но не попадают в статистику.
+     * Метод возвращается после завершения всех отправленных запросов.
+     */
+    Map<String, Result> run(double requestsPerSecond, Duration warmup, Duration duration, long seed) {
+        Map<String, Stats> statsByOperation = new LinkedHashMap<>();
+        operations.forEach(operation -> statsByOperation.put(operation.name(), new Stats()));
+        SplittableRandom random = new SplittableRandom(seed);
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / requestsPerSecond;
+
+        long startedAt = System.nanoTime();
+        long measureFrom = startedAt + warmup.toNanos();
+        long finishAt = measureFrom + duration.toNanos();
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long scheduledAt = startedAt + (long) (i * intervalNanos);
+                if (scheduledAt >= finishAt) {
+                    break;
+                }
+                long delay = scheduledAt - System.nanoTime();
+                if (delay > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+                Operation operation = pick(random);
+                HttpRequest request = operation.request().apply(random);
+                Stats stats = (scheduledAt >= measureFrom) ? statsByOperation.get(operation.name()) : null;
+                requests.submit(() -> send(request, scheduledAt, stats));
+            }
+        }
+
+        double seconds = duration.toNanos() / 1e9;
+        Map<String, Result> results = new LinkedHashMap<>();
+        statsByOperation.forEach((name, stats) -> results.put(name,
+                new Result(name, stats.latency, stats.latency.getTotalCount(), stats.errors.sum(), seconds)));
+        return results;
+    }
+
+    private void send(HttpRequest request, long scheduledAt, Stats stats) {
+        boolean failed;
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            failed = response.statusCode() >= 400;
+        } catch (Exception e) {
+            failed = true;
+        }
+        if (stats != null) {
+            long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduledAt),
+                    HIGHEST_TRACKABLE_MICROS);
+            stats.latency.recordValue(micros);
+            if (failed) {
+                stats.errors.increment();
+            }
+        }
+    }
+
+    private Operation pick(SplittableRandom random) {
+        int point = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int pos = Arrays.binarySearch(cumulativeWeights, point + 1);
+        return operations.get((pos >= 0) ? pos : -pos - 1);
+    }
+
+    /**
+     * Операция смеси: имя для отчета, относительный вес и построение запроса по общему генератору.
+     */
+    record Operation(String name, int weight, Function<SplittableRandom, HttpRequest> request) {
+    }
+
+    /**
+     * Задержки в микросекундах от запланированного момента отправки.
+     */
+    record Result(String name, Histogram latency, long requests, long errors, double seconds) {
+
+        double throughput() {
+            return requests / seconds;
+        }
+
+        double errorRate() {
+            return (requests == 0) ? 0.0 : (double) errors / requests;
+        }
+
+        double percentileMillis(double percentile) {
+            return latency.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+
+    private static final class Stats {
+
+        private final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+
+        private final LongAdder errors = new LongAdder();
+    }
+}